@@ -0,0 +1,183 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.transistorsoft.tsbackgroundfetch.BackgroundFetch;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Opt-in controller which adapts the fetch-task's minimumFetchInterval to the outcomes Dart reports via #finish.
+ * Each NO_DATA or FAILED outcome backs the interval off (doubling it, up to maximumFetchInterval);  NEW_DATA
+ * snaps it back to the configured minimumFetchInterval.
+ *
+ * The controller state and the last #configure params are persisted so the interval survives process death and can
+ * be re-applied from a headless process, where Dart never calls #configure.
+ */
+class AdaptiveFetchInterval {
+    static final String KEY_ENABLED = "adaptiveFetchInterval";
+    static final String KEY_MAXIMUM = "maximumFetchInterval";
+    static final String KEY_MINIMUM = "minimumFetchInterval";
+
+    // Mirror BackgroundFetch.FETCH_RESULT_* in Dart.
+    static final int RESULT_NEW_DATA = 0;
+    static final int RESULT_NO_DATA  = 1;
+    static final int RESULT_FAILED   = 2;
+
+    static final int DEFAULT_MINIMUM = 15;
+    static final int DEFAULT_MAXIMUM = 240;
+    private static final int BACKOFF_MULTIPLIER = 2;
+
+    private static final String PREFS_NAME = BackgroundFetch.TAG + ".adaptive";
+    private static final String PREF_PARAMS = "params";
+    private static final String PREF_INTERVAL = "interval";
+    private static final String PREF_NEW_DATA = "newData";
+    private static final String PREF_NO_DATA = "noData";
+    private static final String PREF_FAILED = "failed";
+    private static final String PREF_DURATION_TOTAL = "durationTotal";
+    private static final String PREF_DURATION_COUNT = "durationCount";
+
+    // elapsedRealtime the current fetch-event fired;  0 when none is running.
+    private static long sFiredAt = 0;
+
+    /**
+     * Called by BackgroundFetchModule#configure.  Persists params and returns the params to actually apply:  when
+     * enabled, minimumFetchInterval is replaced with the current adapted interval.  When disabled, all state is cleared.
+     */
+    static synchronized Map<String, Object> apply(Context context, Map<String, Object> params) {
+        SharedPreferences prefs = getPrefs(context);
+        if (!Boolean.TRUE.equals(params.get(KEY_ENABLED))) {
+            if (prefs.contains(PREF_PARAMS)) prefs.edit().clear().apply();
+            return params;
+        }
+        int minimum = getMinimum(params);
+        int maximum = getMaximum(params);
+        int interval = prefs.getInt(PREF_INTERVAL, minimum);
+        interval = Math.max(minimum, Math.min(maximum, interval));
+
+        prefs.edit()
+                .putString(PREF_PARAMS, new JSONObject(params).toString())
+                .putInt(PREF_INTERVAL, interval)
+                .apply();
+        return withInterval(params, interval);
+    }
+
+    /**
+     * A fetch-event has fired:  start timing it.
+     */
+    static synchronized void onFetch(String taskId) {
+        if (BackgroundFetchModule.FETCH_TASK_ID.equals(taskId)) {
+            sFiredAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Dart has finished a fetch-event with the provided outcome.
+     * @return the params to re-configure with when the interval changed, otherwise null.
+     */
+    static synchronized Map<String, Object> onFinish(Context context, String taskId, int outcome) {
+        if (!BackgroundFetchModule.FETCH_TASK_ID.equals(taskId)) return null;
+
+        SharedPreferences prefs = getPrefs(context);
+        Map<String, Object> params = loadParams(prefs);
+        if (params == null) return null;
+
+        SharedPreferences.Editor editor = prefs.edit();
+        if (sFiredAt > 0) {
+            editor.putLong(PREF_DURATION_TOTAL, prefs.getLong(PREF_DURATION_TOTAL, 0) + (SystemClock.elapsedRealtime() - sFiredAt));
+            editor.putLong(PREF_DURATION_COUNT, prefs.getLong(PREF_DURATION_COUNT, 0) + 1);
+            sFiredAt = 0;
+        }
+
+        int minimum = getMinimum(params);
+        int maximum = getMaximum(params);
+        int interval = prefs.getInt(PREF_INTERVAL, minimum);
+        int next;
+        switch (outcome) {
+            case RESULT_NEW_DATA:
+                editor.putLong(PREF_NEW_DATA, prefs.getLong(PREF_NEW_DATA, 0) + 1);
+                next = minimum;
+                break;
+            case RESULT_NO_DATA:
+                editor.putLong(PREF_NO_DATA, prefs.getLong(PREF_NO_DATA, 0) + 1);
+                next = Math.min(maximum, interval * BACKOFF_MULTIPLIER);
+                break;
+            case RESULT_FAILED:
+                editor.putLong(PREF_FAILED, prefs.getLong(PREF_FAILED, 0) + 1);
+                next = Math.min(maximum, interval * BACKOFF_MULTIPLIER);
+                break;
+            default:
+                Log.w(BackgroundFetch.TAG, "[AdaptiveFetchInterval] unknown fetch result: " + outcome);
+                next = interval;
+        }
+        editor.putInt(PREF_INTERVAL, next);
+        editor.apply();
+
+        if (next == interval) return null;
+        Log.d(BackgroundFetch.TAG, "[AdaptiveFetchInterval] minimumFetchInterval " + interval + " -> " + next + " minutes");
+        return withInterval(params, next);
+    }
+
+    static synchronized Map<String, Object> getStats(Context context) {
+        SharedPreferences prefs = getPrefs(context);
+        Map<String, Object> stats = new HashMap<>();
+        boolean enabled = prefs.contains(PREF_PARAMS);
+        stats.put("enabled", enabled);
+        if (!enabled) return stats;
+
+        long durationCount = prefs.getLong(PREF_DURATION_COUNT, 0);
+        stats.put("interval", prefs.getInt(PREF_INTERVAL, DEFAULT_MINIMUM));
+        stats.put("newData", prefs.getLong(PREF_NEW_DATA, 0));
+        stats.put("noData", prefs.getLong(PREF_NO_DATA, 0));
+        stats.put("failed", prefs.getLong(PREF_FAILED, 0));
+        stats.put("meanDuration", (durationCount > 0) ? prefs.getLong(PREF_DURATION_TOTAL, 0) / durationCount : 0);
+        return stats;
+    }
+
+    private static Map<String, Object> withInterval(Map<String, Object> params, int interval) {
+        Map<String, Object> result = new HashMap<>(params);
+        result.put(KEY_MINIMUM, interval);
+        return result;
+    }
+
+    private static int getMinimum(Map<String, Object> params) {
+        Object value = params.get(KEY_MINIMUM);
+        return (value instanceof Number) ? ((Number) value).intValue() : DEFAULT_MINIMUM;
+    }
+
+    private static int getMaximum(Map<String, Object> params) {
+        Object value = params.get(KEY_MAXIMUM);
+        int maximum = (value instanceof Number) ? ((Number) value).intValue() : DEFAULT_MAXIMUM;
+        return Math.max(getMinimum(params), maximum);
+    }
+
+    private static Map<String, Object> loadParams(SharedPreferences prefs) {
+        String json = prefs.getString(PREF_PARAMS, null);
+        if (json == null) return null;
+        try {
+            JSONObject object = new JSONObject(json);
+            Map<String, Object> params = new HashMap<>();
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                params.put(key, object.get(key));
+            }
+            return params;
+        } catch (JSONException e) {
+            Log.e(BackgroundFetch.TAG, "[AdaptiveFetchInterval] failed to load params: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -2,19 +2,27 @@ package com.transistorsoft.flutter.backgroundfetch;
 
 import android.app.Activity;
 import android.content.Context;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.transistorsoft.tsbackgroundfetch.BackgroundFetch;
 import com.transistorsoft.tsbackgroundfetch.BackgroundFetchConfig;
 import com.transistorsoft.tsbackgroundfetch.LifecycleManager;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.EventChannel;
@@ -22,10 +30,14 @@ import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
+import io.flutter.plugin.common.StandardMethodCodec;
 
 /** BackgroundFetchPlugin */
 public class BackgroundFetchModule implements MethodCallHandler {
-    private static BackgroundFetchModule sInstance;
+    private static volatile BackgroundFetchModule sInstance;
+    private static volatile boolean sDeferredInitialization = false;
+    // Set once the native BackgroundFetch singleton is known to be constructed (see #getAdapter).
+    private static volatile boolean sAdapterInitialized = false;
 
     public static final String TAG                          = "TSBackgroundFetch";
     static final String PLUGIN_ID                           = "com.transistorsoft/flutter_background_fetch";
@@ -36,106 +48,224 @@ public class BackgroundFetchModule implements MethodCallHandler {
 
     private static final String ACTION_REGISTER_HEADLESS_TASK = "registerHeadlessTask";
     private static final String ACTION_SCHEDULE_TASK          = "scheduleTask";
+    private static final String ACTION_GET_METRICS            = "getMetrics";
+    private static final String ACTION_SCHEDULE_TASKS         = "scheduleTasks";
+    private static final String ACTION_STOP_TASKS             = "stopTasks";
+    private static final String ACTION_FINISH_TASKS           = "finishTasks";
+    private static final String ACTION_QUERY_JOURNAL          = "queryJournal";
 
     private static final String HEADLESS_JOB_SERVICE_CLASS = HeadlessTask.class.getName();
 
+    private static final String KEY_EVENT_BUFFER_CAPACITY   = "eventBufferCapacity";
+    private static final int DEFAULT_EVENT_BUFFER_CAPACITY  = 16;
+
     private final FetchStreamHandler mFetchCallback;
 
-    private Context mContext;
+    private volatile Context mContext;
 
-    private final AtomicBoolean mIsAttachedToEngine = new AtomicBoolean(false);
     // Keyed by BinaryMessenger so tearing down one engine (e.g. a sibling
     // plugin's headless FlutterEngine) doesn't strip the handler from
     // another engine's channel.  The previous single-field design was
     // "last-attached wins" and lost the main-engine handler whenever any
-    // other engine detached.
-    private final Map<BinaryMessenger, MethodChannel> mMethodChannels = new HashMap<>();
-    private EventChannel mEventChannelTask;
+    // other engine detached.  Concurrent:  add-to-app hosts may attach and
+    // detach engines from multiple threads.
+    private final Map<BinaryMessenger, MethodChannel> mMethodChannels = new ConcurrentHashMap<>();
+    private final Map<BinaryMessenger, EventChannel> mEventChannels = new ConcurrentHashMap<>();
+    // Engines currently attached to an Activity.  We're headless when this is empty.
+    private final Set<BinaryMessenger> mActivityEngines = ConcurrentHashMap.newKeySet();
+
+    // Attach / detach churn.  Compared with the registry sizes reported by #getMetrics to detect leaked engines.
+    private final AtomicLong mEngineAttaches = new AtomicLong();
+    private final AtomicLong mEngineDetaches = new AtomicLong();
+    private final AtomicLong mActivityAttaches = new AtomicLong();
+    private final AtomicLong mActivityDetaches = new AtomicLong();
 
     public static BackgroundFetchModule getInstance() {
-        if (sInstance == null) {
-            sInstance = getInstanceSynchronized();
+        BackgroundFetchModule instance = sInstance;
+        if (instance == null) {
+            synchronized (BackgroundFetchModule.class) {
+                instance = sInstance;
+                if (instance == null) {
+                    sInstance = instance = new BackgroundFetchModule();
+                }
+            }
         }
-        return sInstance;
-    }
-
-    private static synchronized BackgroundFetchModule getInstanceSynchronized() {
-        if (sInstance == null) sInstance = new BackgroundFetchModule();
-        return sInstance;
+        return instance;
     }
 
     private BackgroundFetchModule() {
         mFetchCallback = new FetchStreamHandler();
     }
 
+    @VisibleForTesting
+    FetchStreamHandler getFetchCallback() {
+        return mFetchCallback;
+    }
+
+    /**
+     * When deferred, engine-attach no longer initializes the native BackgroundFetch singleton:  it is initialized
+     * once the main-thread goes idle, or by the first method-call, whichever comes first.  OS callbacks arrive via
+     * the native library's own manifest components, which initialize it themselves.
+     */
+    static void setDeferredInitialization(boolean deferred) {
+        sDeferredInitialization = deferred;
+    }
+
+    /**
+     * Returns the native BackgroundFetch singleton.  Its construction always happens on the main-thread, as when
+     * eager:  when deferred, a method-call arriving on the TaskQueue before the main-thread went idle posts the
+     * construction to the main-thread and waits for it, rather than racing the idle-handler to construct it.
+     */
+    static BackgroundFetch getAdapter(Context context) {
+        if (sAdapterInitialized || !sDeferredInitialization || Looper.myLooper() == Looper.getMainLooper()) {
+            BackgroundFetch adapter = BackgroundFetch.getInstance(context);
+            sAdapterInitialized = true;
+            return adapter;
+        }
+        FutureTask<BackgroundFetch> construction = new FutureTask<>(() -> getAdapter(context));
+        BackgroundFetch.getUiHandler().post(construction);
+        try {
+            return construction.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to initialize BackgroundFetch", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted initializing BackgroundFetch", e);
+        }
+    }
+
+    /**
+     * Forget that the native singleton was constructed, as in a fresh process.
+     */
+    @VisibleForTesting
+    static void resetAdapterInitialized() {
+        sAdapterInitialized = false;
+    }
+
     void onAttachedToEngine(Context context, BinaryMessenger messenger) {
-        // Poke BackgroundFetch alive once Context is received
-        BackgroundFetch.getInstance(context);
-        mIsAttachedToEngine.set(true);
+        mEngineAttaches.incrementAndGet();
         mContext = context;
+        if (sDeferredInitialization) {
+            // Off the critical-path of engine attach:  wait until the main-thread has nothing better to do.
+            Looper.myQueue().addIdleHandler(() -> {
+                getAdapter(context);
+                return false;
+            });
+        } else {
+            // Poke BackgroundFetch alive once Context is received
+            getAdapter(context);
+        }
 
-        MethodChannel methodChannel = new MethodChannel(messenger, METHOD_CHANNEL_NAME);
+        // Handle method-calls on a serial background TaskQueue:  configure / scheduleTask / etc perform JobScheduler,
+        // AlarmManager and persistence work which has no business on the main-thread during app startup.
+        // Results may be posted from the TaskQueue thread.  Native adapter calls which therefore run on the TaskQueue:
+        // - adapter.configure:  #configure, and #finish -> #applyFetchConfig when adaptiveFetchInterval changes.
+        // - adapter.start / stop / status / scheduleTask:  their method-calls, #stopTasks and #scheduleTasks.
+        // - adapter.finish:  #finish / #finishTasks -> #finishTask, and #configure -> FetchStreamHandler#setBufferCapacity
+        //   -> #drop -> #finishTask for events no longer fitting the buffer.
+        // Everything else reaching the adapter (OS fetch / timeout callbacks, HeadlessTask, FinishWatchdog) stays on
+        // the main-thread.  MethodChannelStartupBenchmark (example app) measures the main-thread time saved.
+        BinaryMessenger.TaskQueue taskQueue = messenger.makeBackgroundTaskQueue();
+        MethodChannel methodChannel = new MethodChannel(messenger, METHOD_CHANNEL_NAME, StandardMethodCodec.INSTANCE, taskQueue);
         methodChannel.setMethodCallHandler(this);
         mMethodChannels.put(messenger, methodChannel);
     }
 
     void onDetachedFromEngine(BinaryMessenger messenger) {
+        mEngineDetaches.incrementAndGet();
         MethodChannel methodChannel = mMethodChannels.remove(messenger);
         if (methodChannel != null) {
             methodChannel.setMethodCallHandler(null);
         }
-        if (mMethodChannels.isEmpty()) {
-            mIsAttachedToEngine.set(false);
+        EventChannel eventChannel = mEventChannels.remove(messenger);
+        if (eventChannel != null) {
+            eventChannel.setStreamHandler(null);
+        }
+        mFetchCallback.removeEngine(messenger);
+        if (mActivityEngines.remove(messenger) && mActivityEngines.isEmpty()) {
+            LifecycleManager.getInstance().setHeadless(true);
         }
     }
 
     void setActivity(@Nullable Activity activity, @Nullable BinaryMessenger messenger) {
         if (activity != null) {
+            mActivityAttaches.incrementAndGet();
             // Tear down any lingering headless FlutterEngine spawned by
             // HeadlessTask while the main Activity was gone.  Keeping it
             // alive alongside the main engine risks plugin-channel conflicts
             // that surface as MissingPluginException on the /methods channel
             // (or a stuck splash / logo) when an FGS kept the process alive
             // post-termination.
-            HeadlessTask.destroyBackgroundIsolate();
+            HeadlessEngineManager.evict("main engine attaching");
 
             // Inform BackgroundFetch LifecycleManager that we're not Headless (an Activity exists).
             LifecycleManager.getInstance().setHeadless(false);
             if (messenger != null) {
-                mEventChannelTask = new EventChannel(messenger, EVENT_CHANNEL_NAME);
-                mEventChannelTask.setStreamHandler(mFetchCallback);
+                mActivityEngines.add(messenger);
+                EventChannel eventChannel = new EventChannel(messenger, EVENT_CHANNEL_NAME);
+                eventChannel.setStreamHandler(mFetchCallback.forEngine(messenger));
+                mEventChannels.put(messenger, eventChannel);
             }
         } else {
-            LifecycleManager.getInstance().setHeadless(true);
-            if (mEventChannelTask != null) {
-                mEventChannelTask.setStreamHandler(null);
+            mActivityDetaches.incrementAndGet();
+            // The engine's event-sink remains valid while its Dart listener lives:  it is only
+            // removed on cancel or when the engine detaches.
+            if (messenger != null) {
+                mActivityEngines.remove(messenger);
+                EventChannel eventChannel = mEventChannels.remove(messenger);
+                if (eventChannel != null) {
+                    eventChannel.setStreamHandler(null);
+                }
+            }
+            if (mActivityEngines.isEmpty()) {
+                LifecycleManager.getInstance().setHeadless(true);
             }
-            mEventChannelTask = null;
         }
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
-        if (call.method.equals(BackgroundFetch.ACTION_CONFIGURE)) {
-            Map<String, Object> params = (Map<String, Object>) call.arguments;
-            configure(params, result);
-        } else if (call.method.equals(BackgroundFetch.ACTION_START)) {
-            start(result);
-        } else if (call.method.equals(BackgroundFetch.ACTION_STOP)) {
-            stop((String) call.arguments, result);
-        } else if (call.method.equals(BackgroundFetch.ACTION_STATUS)) {
-            status(result);
-        } else if (call.method.equals(BackgroundFetch.ACTION_FINISH)) {
-            String taskId = (String) call.arguments;
-            finish(taskId, result);
-        } else if (call.method.equals(ACTION_REGISTER_HEADLESS_TASK)) {
-            registerHeadlessTask((List<Object>) call.arguments, result);
-        } else if (call.method.equals(ACTION_SCHEDULE_TASK)) {
-            Map<String, Object> params = (Map<String, Object>) call.arguments;
-            scheduleTask(params, result);
-        } else {
-            result.notImplemented();
+        // On the TaskQueue:  a no-op once loaded.
+        PluginTracer.load(mContext);
+        boolean traced = PluginTracer.begin("BackgroundFetchModule.onMethodCall", call.method);
+        try {
+            if (call.method.equals(BackgroundFetch.ACTION_CONFIGURE)) {
+                Map<String, Object> params = (Map<String, Object>) call.arguments;
+                configure(params, result);
+            } else if (call.method.equals(BackgroundFetch.ACTION_START)) {
+                start(result);
+            } else if (call.method.equals(BackgroundFetch.ACTION_STOP)) {
+                stop((String) call.arguments, result);
+            } else if (call.method.equals(BackgroundFetch.ACTION_STATUS)) {
+                status(result);
+            } else if (call.method.equals(BackgroundFetch.ACTION_FINISH)) {
+                // Either a bare taskId or {taskId, result} when Dart reports the fetch outcome.
+                if (call.arguments instanceof Map) {
+                    finish(call.argument("taskId"), call.argument("result"), result);
+                } else {
+                    finish((String) call.arguments, null, result);
+                }
+            } else if (call.method.equals(ACTION_REGISTER_HEADLESS_TASK)) {
+                registerHeadlessTask((List<Object>) call.arguments, result);
+            } else if (call.method.equals(ACTION_SCHEDULE_TASK)) {
+                Map<String, Object> params = (Map<String, Object>) call.arguments;
+                scheduleTask(params, result);
+            } else if (call.method.equals(ACTION_SCHEDULE_TASKS)) {
+                scheduleTasks((List<Map<String, Object>>) call.arguments, result);
+            } else if (call.method.equals(ACTION_STOP_TASKS)) {
+                stopTasks((List<String>) call.arguments, result);
+            } else if (call.method.equals(ACTION_FINISH_TASKS)) {
+                finishTasks((List<String>) call.arguments, result);
+            } else if (call.method.equals(ACTION_GET_METRICS)) {
+                getMetrics(result);
+            } else if (call.method.equals(ACTION_QUERY_JOURNAL)) {
+                queryJournal(call, result);
+            } else {
+                result.notImplemented();
+            }
+        } finally {
+            PluginTracer.end(traced);
         }
     }
 
@@ -148,48 +278,242 @@ public class BackgroundFetchModule implements MethodCallHandler {
     }
 
     private void configure(Map<String, Object> params, @NonNull Result result) {
-        BackgroundFetch adapter = BackgroundFetch.getInstance(mContext);
+        BackgroundFetch adapter = getAdapter(mContext);
+        // Decode persisted TaskConfig#extras here, on the channel's background queue, rather than on the main-thread
+        // when the first event needs them.
+        TaskExtras.load(mContext);
+        if (params.containsKey(HeadlessEngineManager.KEY_IDLE_TTL)) {
+            // Dart int arrives as Integer or Long depending on magnitude.
+            Number ttl = (Number) params.get(HeadlessEngineManager.KEY_IDLE_TTL);
+            if (ttl != null) HeadlessEngineManager.setIdleTtl(mContext, ttl.longValue());
+        }
+        if (params.containsKey(KEY_EVENT_BUFFER_CAPACITY)) {
+            mFetchCallback.setBufferCapacity((int) params.get(KEY_EVENT_BUFFER_CAPACITY));
+        }
+        if (params.containsKey(FinishWatchdog.KEY_TIMEOUT)) {
+            Number timeout = (Number) params.get(FinishWatchdog.KEY_TIMEOUT);
+            if (timeout != null) FinishWatchdog.setTimeout(mContext, timeout.longValue());
+        }
+        if (params.containsKey(PluginTracer.KEY_ENABLED)) {
+            PluginTracer.setEnabled(mContext, (boolean) params.get(PluginTracer.KEY_ENABLED));
+        }
+        if (params.containsKey(HeadlessScheduler.KEY_MAX_CONCURRENCY)) {
+            HeadlessScheduler.setMaxConcurrency(mContext, (int) params.get(HeadlessScheduler.KEY_MAX_CONCURRENCY));
+        }
+        if (params.containsKey(HeadlessEngineManager.KEY_USE_ENGINE_GROUP)) {
+            HeadlessEngineManager.setUseEngineGroup(mContext, (boolean) params.get(HeadlessEngineManager.KEY_USE_ENGINE_GROUP));
+        }
+        // With adaptiveFetchInterval, minimumFetchInterval is replaced by the current adapted interval.
+        params = AdaptiveFetchInterval.apply(mContext, params);
+        applyFetchConfig(adapter, params);
+
+        result.success(adapter.status());
+    }
+
+    private void applyFetchConfig(BackgroundFetch adapter, Map<String, Object> params) {
         adapter.configure(buildConfig(params)
                 .setTaskId(FETCH_TASK_ID)
                 .setIsFetchTask(true)
                 .build(), mFetchCallback);
-
-        result.success(adapter.status());
     }
 
     private void start(@NonNull Result result) {
-        BackgroundFetch adapter = BackgroundFetch.getInstance(mContext);
+        BackgroundFetch adapter = getAdapter(mContext);
         adapter.start(FETCH_TASK_ID);
         result.success(adapter.status());
     }
 
     private void stop(@Nullable String taskId, @NonNull Result result) {
-        BackgroundFetch adapter = BackgroundFetch.getInstance(mContext);
+        BackgroundFetch adapter = getAdapter(mContext);
         adapter.stop(taskId);
+        TaskExtras.remove(mContext, taskId);
         result.success(adapter.status());
     }
 
     private void status(@NonNull Result result) {
-        BackgroundFetch adapter = BackgroundFetch.getInstance(mContext);
+        BackgroundFetch adapter = getAdapter(mContext);
         result.success(adapter.status());
     }
 
-    private void finish(String taskId, Result result) {
+    private void finish(String taskId, @Nullable Integer fetchResult, Result result) {
         if (taskId == null) taskId = FETCH_TASK_ID;
-        BackgroundFetch adapter = BackgroundFetch.getInstance(mContext);
-
-        adapter.finish(taskId);
+        finishTask(mContext, taskId, (fetchResult != null) ? fetchResult : TaskJournal.OUTCOME_NONE);
+        if (fetchResult != null) {
+            Map<String, Object> params = AdaptiveFetchInterval.onFinish(mContext, taskId, fetchResult);
+            if (params != null) {
+                applyFetchConfig(getAdapter(mContext), params);
+            }
+        }
         result.success(true);
     }
 
+    /**
+     * Finish a task and release everything tracking it.  Also used by HeadlessTask and FinishWatchdog.
+     */
+    static void finishTask(Context context, String taskId) {
+        finishTask(context, taskId, TaskJournal.OUTCOME_NONE);
+    }
+
+    /**
+     * @param outcome the fetch result reported by Dart, or TaskJournal#OUTCOME_NONE.
+     */
+    static void finishTask(Context context, String taskId, int outcome) {
+        getAdapter(context).finish(taskId);
+        FinishWatchdog.cancel(taskId);
+        HeadlessScheduler.release(taskId);
+        HeadlessEngineManager.release(context, taskId);
+        TaskExtras.onFinish(context, taskId);
+        TaskJournal.record(context, taskId, TaskMetrics.end(taskId), outcome);
+        PluginTracer.endTask(taskId);
+    }
+
+    /**
+     * Finish a list of taskIds in one pass.  Returns {taskId: success}.
+     */
+    private void finishTasks(List<String> taskIds, @NonNull Result result) {
+        Map<String, Object> results = new HashMap<>();
+        for (String taskId : taskIds) {
+            try {
+                finishTask(mContext, taskId);
+                results.put(taskId, true);
+            } catch (Exception e) {
+                Log.e(BackgroundFetch.TAG, "finishTasks failed to finish " + taskId + ": " + e.getMessage());
+                results.put(taskId, false);
+            }
+        }
+        result.success(results);
+    }
+
+    /**
+     * Stop a list of taskIds in one pass.  Returns {taskId: success}.
+     */
+    private void stopTasks(List<String> taskIds, @NonNull Result result) {
+        BackgroundFetch adapter = getAdapter(mContext);
+        Map<String, Object> results = new HashMap<>();
+        for (String taskId : taskIds) {
+            try {
+                adapter.stop(taskId);
+                TaskExtras.remove(mContext, taskId);
+                results.put(taskId, true);
+            } catch (Exception e) {
+                Log.e(BackgroundFetch.TAG, "stopTasks failed to stop " + taskId + ": " + e.getMessage());
+                results.put(taskId, false);
+            }
+        }
+        result.success(results);
+    }
+
+    private void getMetrics(@NonNull Result result) {
+        Map<String, Object> metrics = TaskMetrics.getMetrics();
+        metrics.put("headless", HeadlessTask.getDispatchStats());
+        metrics.put("engine", HeadlessEngineManager.getStats());
+        metrics.put("droppedEvents", mFetchCallback.getDroppedEvents());
+        metrics.put("watchdog", FinishWatchdog.getStats());
+        metrics.put("scheduler", HeadlessScheduler.getStats());
+        metrics.put("lifecycle", getLifecycleStats());
+        metrics.put("adaptiveFetchInterval", AdaptiveFetchInterval.getStats(mContext));
+        result.success(metrics);
+    }
+
+    /**
+     * Returns journal records matching the optional {start, end, taskId} filters.
+     */
+    private void queryJournal(MethodCall call, @NonNull Result result) {
+        Number start = call.argument("start");
+        Number end = call.argument("end");
+        String taskId = call.argument("taskId");
+        result.success(TaskJournal.query(mContext,
+                (start != null) ? start.longValue() : null,
+                (end != null) ? end.longValue() : null,
+                taskId));
+    }
+
+    /**
+     * Attach / detach churn alongside the size of each per-engine registry.  After any number of cycles, the
+     * registries should hold only the engines still attached.
+     */
+    @VisibleForTesting
+    Map<String, Object> getLifecycleStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("engineAttaches", mEngineAttaches.get());
+        stats.put("engineDetaches", mEngineDetaches.get());
+        stats.put("activityAttaches", mActivityAttaches.get());
+        stats.put("activityDetaches", mActivityDetaches.get());
+        stats.put("methodChannels", mMethodChannels.size());
+        stats.put("eventChannels", mEventChannels.size());
+        stats.put("eventSinks", mFetchCallback.getSinkCount());
+        stats.put("activityEngines", mActivityEngines.size());
+        return stats;
+    }
+
     private void scheduleTask(Map<String, Object> params, @NonNull Result result) {
-        BackgroundFetch adapter = BackgroundFetch.getInstance(mContext);
-        adapter.scheduleTask(buildConfig(params).build());
+        int extrasSize = TaskExtras.sizeOf(params);
+        if (extrasSize > TaskExtras.MAX_SIZE) {
+            result.error("EXTRAS_TOO_LARGE", "TaskConfig.extras is " + extrasSize + " bytes encoded;  the limit is " + TaskExtras.MAX_SIZE, null);
+            return;
+        }
+        BackgroundFetch adapter = getAdapter(mContext);
+        applyTaskConfig(adapter, params);
         result.success(true);
     }
 
+    /**
+     * Record a task's plugin-side options (scheduler, extras) and schedule it.
+     */
+    private void applyTaskConfig(BackgroundFetch adapter, Map<String, Object> params) {
+        String taskId = (String) params.get(BackgroundFetchConfig.FIELD_TASK_ID);
+        if (taskId != null) {
+            HeadlessScheduler.setTaskOptions(mContext, taskId, params);
+            TaskExtras.set(mContext, taskId, params);
+        }
+        adapter.scheduleTask(buildConfig(params).build());
+    }
+
+    /**
+     * Schedule a list of TaskConfigs in one pass.  Every config is validated before any is applied:  if one is
+     * invalid, nothing is scheduled.  Returns {taskId: success}.
+     */
+    private void scheduleTasks(List<Map<String, Object>> configs, @NonNull Result result) {
+        List<String> errors = new ArrayList<>();
+        Map<String, Object> seen = new HashMap<>();
+        for (int i = 0; i < configs.size(); i++) {
+            Object taskId = configs.get(i).get(BackgroundFetchConfig.FIELD_TASK_ID);
+            if (!(taskId instanceof String) || ((String) taskId).isEmpty()) {
+                errors.add("[" + i + "] missing taskId");
+            } else if (seen.put((String) taskId, i) != null) {
+                errors.add("[" + i + "] duplicate taskId: " + taskId);
+            }
+            if (!(configs.get(i).get("delay") instanceof Number)) {
+                errors.add("[" + i + "] missing delay");
+            }
+            int extrasSize = TaskExtras.sizeOf(configs.get(i));
+            if (extrasSize > TaskExtras.MAX_SIZE) {
+                errors.add("[" + i + "] extras too large: " + extrasSize + " bytes (limit " + TaskExtras.MAX_SIZE + ")");
+            }
+        }
+        if (!errors.isEmpty()) {
+            result.error("INVALID_TASK_CONFIG", "scheduleTasks rejected " + errors.size() + " invalid config(s)", errors);
+            return;
+        }
+
+        BackgroundFetch adapter = getAdapter(mContext);
+        Map<String, Object> results = new HashMap<>();
+        for (Map<String, Object> params : configs) {
+            String taskId = (String) params.get(BackgroundFetchConfig.FIELD_TASK_ID);
+            try {
+                applyTaskConfig(adapter, params);
+                results.put(taskId, true);
+            } catch (Exception e) {
+                Log.e(BackgroundFetch.TAG, "scheduleTasks failed to schedule " + taskId + ": " + e.getMessage());
+                results.put(taskId, false);
+            }
+        }
+        result.success(results);
+    }
+
+    @VisibleForTesting
     @NonNull
-    private BackgroundFetchConfig.Builder buildConfig(@NonNull Map<String, Object>params) {
+    BackgroundFetchConfig.Builder buildConfig(@NonNull Map<String, Object>params) {
         BackgroundFetchConfig.Builder config = new BackgroundFetchConfig.Builder();
 
         if (params.containsKey(BackgroundFetchConfig.FIELD_TASK_ID)) {
@@ -238,38 +562,137 @@ public class BackgroundFetchModule implements MethodCallHandler {
         return config;
     }
 
-    class FetchStreamHandler implements EventChannel.StreamHandler, BackgroundFetch.Callback {
-        private EventChannel.EventSink mEventSink;
+    class FetchStreamHandler implements BackgroundFetch.Callback {
+        // One sink per listening engine.  Events fan-out to all of them.
+        private final Map<BinaryMessenger, EventChannel.EventSink> mEventSinks = new ConcurrentHashMap<>();
+
+        // Events received while no Dart listener is attached (eg: Activity re-creation, hot-restart, or
+        // before #configure subscribes).  Replayed in order on #onListen.  When full, the oldest is dropped.
+        private final ArrayDeque<Map<String, Object>> mPendingEvents = new ArrayDeque<>();
+        private int mBufferCapacity = DEFAULT_EVENT_BUFFER_CAPACITY;
+        private long mDroppedEvents = 0;
 
         @Override
         public void onFetch(String taskId) {
             Map<String, Object> event = new HashMap<>();
             event.put("timeout", false);
             event.put("taskId", taskId);
-            if (mEventSink == null) {
-                Log.e(BackgroundFetch.TAG, "FetchStreamHandler.onFetch mEventSink is null.  Cannot fire Dart callback");
-                return;
-            }
-            mEventSink.success(event);
+            putExtras(event, taskId);
+            TaskMetrics.begin(taskId, false);
+            // The tracing toggle was loaded by the #configure which bound this callback (#onMethodCall).
+            PluginTracer.beginTask(taskId);
+            AdaptiveFetchInterval.onFetch(taskId);
+            send(event);
         }
         @Override
         public void onTimeout(String taskId) {
             Map<String, Object> event = new HashMap<>();
             event.put("timeout", true);
             event.put("taskId", taskId);
-            if (mEventSink == null) {
-                Log.e(BackgroundFetch.TAG, "FetchStreamHandler.onTimeout mEventSink is null.  Cannot fire Dart callback");
-                return;
+            putExtras(event, taskId);
+            TaskMetrics.mark(taskId, TaskMetrics.STAGE_TIMEOUT);
+            send(event);
+        }
+        private void putExtras(Map<String, Object> event, String taskId) {
+            Object extras = TaskExtras.get(mContext, taskId);
+            if (extras != null) event.put(TaskExtras.KEY_EXTRAS, extras);
+        }
+        /**
+         * Returns the StreamHandler for the /events channel of the engine owning messenger.
+         */
+        EventChannel.StreamHandler forEngine(BinaryMessenger messenger) {
+            return new EventChannel.StreamHandler() {
+                @Override
+                public void onListen(Object args, EventChannel.EventSink eventSink) {
+                    listen(messenger, eventSink);
+                }
+                @Override
+                public void onCancel(Object args) {
+                    removeEngine(messenger);
+                }
+            };
+        }
+
+        void removeEngine(BinaryMessenger messenger) {
+            synchronized (mPendingEvents) {
+                mEventSinks.remove(messenger);
             }
-            mEventSink.success(event);
         }
-        @Override
-        public void onListen(Object args, EventChannel.EventSink eventSink) {
-            mEventSink = eventSink;
+
+        private void listen(BinaryMessenger messenger, EventChannel.EventSink eventSink) {
+            synchronized (mPendingEvents) {
+                mEventSinks.put(messenger, eventSink);
+                if (!mPendingEvents.isEmpty()) {
+                    Log.d(BackgroundFetch.TAG, "FetchStreamHandler replaying " + mPendingEvents.size() + " buffered event(s)");
+                }
+                while (!mPendingEvents.isEmpty()) {
+                    Map<String, Object> event = mPendingEvents.pollFirst();
+                    eventSink.success(event);
+                    onDelivered(event);
+                }
+            }
+        }
+
+        void setBufferCapacity(int capacity) {
+            List<Map<String, Object>> dropped = new ArrayList<>();
+            synchronized (mPendingEvents) {
+                mBufferCapacity = Math.max(0, capacity);
+                while (mPendingEvents.size() > mBufferCapacity) {
+                    dropped.add(mPendingEvents.pollFirst());
+                }
+            }
+            for (Map<String, Object> event : dropped) {
+                drop(event);
+            }
         }
-        @Override
-        public void onCancel(Object args) {
 
+        private void send(Map<String, Object> event) {
+            Map<String, Object> dropped = null;
+            synchronized (mPendingEvents) {
+                if (!mEventSinks.isEmpty()) {
+                    boolean traced = PluginTracer.begin("FetchStreamHandler.send", (String) event.get("taskId"));
+                    for (EventChannel.EventSink eventSink : mEventSinks.values()) {
+                        eventSink.success(event);
+                    }
+                    onDelivered(event);
+                    PluginTracer.end(traced);
+                    return;
+                }
+                Log.w(BackgroundFetch.TAG, "FetchStreamHandler no Dart listener.  Buffering event until Dart listens: " + event.get("taskId"));
+                mPendingEvents.addLast(event);
+                if (mPendingEvents.size() > mBufferCapacity) {
+                    dropped = mPendingEvents.pollFirst();
+                }
+            }
+            if (dropped != null) drop(dropped);
+        }
+
+        private void onDelivered(Map<String, Object> event) {
+            String taskId = (String) event.get("taskId");
+            TaskMetrics.mark(taskId, TaskMetrics.STAGE_DISPATCHED);
+            if (!Boolean.TRUE.equals(event.get("timeout"))) {
+                FinishWatchdog.arm(mContext, taskId);
+            }
+        }
+
+        // Nobody will ever finish an event we've dropped:  finish it ourselves so the OS isn't left waiting.
+        private void drop(Map<String, Object> event) {
+            String taskId = (String) event.get("taskId");
+            synchronized (mPendingEvents) {
+                mDroppedEvents++;
+            }
+            Log.e(BackgroundFetch.TAG, "FetchStreamHandler event buffer full.  Dropped and finished: " + taskId);
+            finishTask(mContext, taskId);
+        }
+
+        int getSinkCount() {
+            return mEventSinks.size();
+        }
+
+        long getDroppedEvents() {
+            synchronized (mPendingEvents) {
+                return mDroppedEvents;
+            }
         }
     }
 }
@@ -1,6 +1,9 @@
 package com.transistorsoft.flutter.backgroundfetch;
 
+import android.content.Context;
+
 import androidx.annotation.NonNull;
+import io.flutter.embedding.engine.FlutterEngineGroup;
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
@@ -14,6 +17,34 @@ public class BackgroundFetchPlugin implements FlutterPlugin, ActivityAware {
 
     public BackgroundFetchPlugin() { }
 
+    /**
+     * Add-to-app hosts which spawn their engines from a {@link FlutterEngineGroup} may provide it here so the
+     * headless engine is spawned from the same group, sharing its VM snapshot and code pages.
+     */
+    public static void setFlutterEngineGroup(FlutterEngineGroup group) {
+        HeadlessEngineManager.setEngineGroup(group);
+    }
+
+    /**
+     * Defer initialization of the native BackgroundFetch singleton off the engine-attach critical-path, until the
+     * main-thread is idle or the plugin is first used.  Call from {@code Application#onCreate}, before any engine
+     * is created.
+     */
+    public static void setDeferredInitialization(boolean deferred) {
+        BackgroundFetchModule.setDeferredInitialization(deferred);
+    }
+
+    /**
+     * Warm-restore headless state at process start (eg: after boot, or after the OS killed the process), so the
+     * first headless task doesn't pay for it serially:  prefetches the headless callback ids and the Flutter
+     * application-info on a background thread and, with {@code preloadFlutter}, starts loading the Flutter native
+     * library and assets.  Call from {@code Application#onCreate}.  The resulting first-dispatch latency is reported
+     * as {@code headless.firstDispatch} by {@code getMetrics}.
+     */
+    public static void warmRestore(Context context, boolean preloadFlutter) {
+        WarmRestore.start(context, preloadFlutter);
+    }
+
     @Override
     public void onAttachedToEngine(@NonNull FlutterPlugin.FlutterPluginBinding binding) {
         mMessenger = binding.getBinaryMessenger();
@@ -46,6 +77,6 @@ public class BackgroundFetchPlugin implements FlutterPlugin, ActivityAware {
 
     @Override
     public void onDetachedFromActivity() {
-        BackgroundFetchModule.getInstance().setActivity(null, null);
+        BackgroundFetchModule.getInstance().setActivity(null, mMessenger);
     }
 }
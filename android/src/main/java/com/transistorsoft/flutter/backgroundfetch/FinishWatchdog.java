@@ -0,0 +1,128 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.transistorsoft.tsbackgroundfetch.BackgroundFetch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Automatically finishes tasks which Dart never completes (eg: the handler threw or forgot to call #finish),
+ * releasing the job and its wakelock before the OS timeout.  A deadline is armed when an event is delivered to
+ * Dart and cancelled by #finish.
+ */
+class FinishWatchdog {
+    static final String KEY_TIMEOUT = "autoFinishTimeout";
+    // 0:  disabled.
+    static final long DEFAULT_TIMEOUT = 0;
+    // JobScheduler stops a JobService after 10 minutes.  A longer budget would never fire;  leave time to finish.
+    static final long OS_TIMEOUT = 10 * 60 * 1000L;
+    static final long MAX_TIMEOUT = OS_TIMEOUT - 30 * 1000L;
+
+    private static final int MAX_DURATION_SAMPLES = 32;
+
+    private static final Map<String, Deadline> sDeadlines = new HashMap<>();
+    private static Long sTimeout;
+
+    private static long sForceFinished = 0;
+    // Ring of the run-times (ms) of force-finished tasks.
+    private static final long[] sDurations = new long[MAX_DURATION_SAMPLES];
+    private static int sDurationCount = 0;
+
+    /**
+     * Persist the budget (ms) given to Dart to finish a task, clamped to MAX_TIMEOUT.  Called by
+     * BackgroundFetchModule#configure.
+     */
+    static void setTimeout(Context context, long timeout) {
+        if (timeout > MAX_TIMEOUT) {
+            Log.w(BackgroundFetch.TAG, "[FinishWatchdog] " + KEY_TIMEOUT + " " + timeout + "ms is not below the OS limit of " + OS_TIMEOUT + "ms.  Clamped to " + MAX_TIMEOUT + "ms");
+            timeout = MAX_TIMEOUT;
+        }
+        synchronized (sDeadlines) {
+            sTimeout = timeout;
+        }
+        SharedPreferences prefs = context.getSharedPreferences(BackgroundFetch.TAG, Context.MODE_PRIVATE);
+        prefs.edit().putLong(KEY_TIMEOUT, timeout).apply();
+    }
+
+    private static long getTimeout(Context context) {
+        synchronized (sDeadlines) {
+            if (sTimeout == null) {
+                SharedPreferences prefs = context.getSharedPreferences(BackgroundFetch.TAG, Context.MODE_PRIVATE);
+                sTimeout = Math.min(prefs.getLong(KEY_TIMEOUT, DEFAULT_TIMEOUT), MAX_TIMEOUT);
+            }
+            return sTimeout;
+        }
+    }
+
+    /**
+     * An event for taskId has been delivered to Dart:  start its deadline.
+     */
+    static void arm(Context context, String taskId) {
+        long timeout = getTimeout(context);
+        if (timeout <= 0) return;
+
+        Deadline deadline = new Deadline(context.getApplicationContext(), taskId);
+        synchronized (sDeadlines) {
+            Deadline previous = sDeadlines.put(taskId, deadline);
+            if (previous != null) BackgroundFetch.getUiHandler().removeCallbacks(previous);
+        }
+        BackgroundFetch.getUiHandler().postDelayed(deadline, timeout);
+    }
+
+    /**
+     * taskId has been finished:  cancel its deadline.
+     */
+    static void cancel(String taskId) {
+        Deadline deadline;
+        synchronized (sDeadlines) {
+            deadline = sDeadlines.remove(taskId);
+        }
+        if (deadline != null) BackgroundFetch.getUiHandler().removeCallbacks(deadline);
+    }
+
+    static Map<String, Object> getStats() {
+        List<Long> durations = new ArrayList<>();
+        Map<String, Object> stats;
+        synchronized (sDeadlines) {
+            for (int i = 0; i < Math.min(sDurationCount, MAX_DURATION_SAMPLES); i++) {
+                durations.add(sDurations[i]);
+            }
+            stats = TaskMetrics.summarize(durations);
+            stats.put("forceFinished", sForceFinished);
+            stats.put("armed", sDeadlines.size());
+            stats.put("timeout", (sTimeout != null) ? sTimeout : DEFAULT_TIMEOUT);
+        }
+        return stats;
+    }
+
+    static class Deadline implements Runnable {
+        private final Context mContext;
+        private final String mTaskId;
+        private final long mArmedAt = SystemClock.elapsedRealtime();
+
+        Deadline(Context context, String taskId) {
+            mContext = context;
+            mTaskId = taskId;
+        }
+
+        @Override
+        public void run() {
+            long ranFor = SystemClock.elapsedRealtime() - mArmedAt;
+            synchronized (sDeadlines) {
+                if (sDeadlines.get(mTaskId) != this) return;
+                sForceFinished++;
+                sDurations[sDurationCount % MAX_DURATION_SAMPLES] = ranFor;
+                sDurationCount++;
+            }
+            Log.w(BackgroundFetch.TAG, "[FinishWatchdog] task not finished after " + ranFor + "ms.  Force-finishing: " + mTaskId);
+            BackgroundFetchModule.finishTask(mContext, mTaskId);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.transistorsoft.tsbackgroundfetch.BackgroundFetch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.embedding.engine.FlutterEngineGroup;
+import io.flutter.embedding.engine.dart.DartExecutor;
+import io.flutter.view.FlutterCallbackInformation;
+
+/**
+ * Manages the lifetime of the background {@link io.flutter.embedding.engine.FlutterEngine} spawned by
+ * {@link HeadlessTask}.  Rather than booting a fresh engine for each headless task, the engine is kept warm
+ * and reused by subsequent tasks.  Once the last in-flight task finishes, the engine is evicted after a
+ * configurable idle TTL.  It is also evicted when the main Activity attaches or under memory pressure (deferred
+ * until in-flight tasks have finished).
+ */
+class HeadlessEngineManager {
+    static final String KEY_IDLE_TTL = "headlessEngineIdleTtl";
+    // -1:  keep the engine for the life of the process.
+    static final long DEFAULT_IDLE_TTL = -1;
+    static final String KEY_USE_ENGINE_GROUP = "useFlutterEngineGroup";
+
+    private static final Object sLock = new Object();
+    private static final Set<String> sInFlightTasks = new HashSet<>();
+
+    private static Long sIdleTtl;
+    private static Boolean sUseEngineGroup;
+    private static FlutterEngineGroup sEngineGroup;
+    private static boolean sComponentCallbacksRegistered = false;
+
+    private static long sHits = 0;
+    private static long sMisses = 0;
+    private static long sEvictions = 0;
+    private static long sEnginesCreated = 0;
+    private static String sLastEvictionReason;
+
+    // Memory-pressure eviction requested while tasks were in flight:  performed once the last one finishes.
+    private static String sDeferredEvictionReason;
+    private static final int MAX_EVICTION_RECORDS = 16;
+    private static final ArrayDeque<Map<String, Object>> sEvictionLog = new ArrayDeque<>();
+    private static boolean sLastEngineFromGroup = false;
+
+    private static final Runnable sIdleEvictionTask = () -> evict("idle TTL expired");
+
+    // Replaces libflutter in JVM tests.  null:  create real engines.
+    private static EngineFactory sEngineFactory;
+
+    /**
+     * Creates the headless engine and resolves its Dart callback, in place of libflutter.
+     */
+    @VisibleForTesting
+    interface EngineFactory {
+        FlutterEngine createEngine(Context context, DartExecutor.DartEntrypoint entrypoint);
+        @Nullable FlutterCallbackInformation lookupCallbackInformation(long handle);
+    }
+
+    @VisibleForTesting
+    static void setEngineFactory(@Nullable EngineFactory factory) {
+        synchronized (sLock) {
+            sEngineFactory = factory;
+        }
+    }
+
+    /**
+     * Persist the idle TTL (ms) applied after the last headless task finishes.  Called by BackgroundFetchModule#configure.
+     */
+    static void setIdleTtl(Context context, long ttl) {
+        synchronized (sLock) {
+            sIdleTtl = ttl;
+        }
+        SharedPreferences prefs = context.getSharedPreferences(BackgroundFetch.TAG, Context.MODE_PRIVATE);
+        prefs.edit().putLong(KEY_IDLE_TTL, ttl).apply();
+    }
+
+    static long getIdleTtl(Context context) {
+        synchronized (sLock) {
+            if (sIdleTtl == null) {
+                SharedPreferences prefs = context.getSharedPreferences(BackgroundFetch.TAG, Context.MODE_PRIVATE);
+                sIdleTtl = prefs.getLong(KEY_IDLE_TTL, DEFAULT_IDLE_TTL);
+            }
+            return sIdleTtl;
+        }
+    }
+
+    /**
+     * Persist whether the headless engine is spawned from a shared {@link FlutterEngineGroup}.
+     */
+    static void setUseEngineGroup(Context context, boolean value) {
+        synchronized (sLock) {
+            sUseEngineGroup = value;
+        }
+        SharedPreferences prefs = context.getSharedPreferences(BackgroundFetch.TAG, Context.MODE_PRIVATE);
+        prefs.edit().putBoolean(KEY_USE_ENGINE_GROUP, value).apply();
+    }
+
+    /**
+     * Provide the {@link FlutterEngineGroup} the host app spawns its own engines from, so the headless engine
+     * shares their VM snapshot and code pages.  Implies {@link #KEY_USE_ENGINE_GROUP}.
+     */
+    static void setEngineGroup(FlutterEngineGroup group) {
+        synchronized (sLock) {
+            sEngineGroup = group;
+            sUseEngineGroup = (group != null) ? Boolean.TRUE : null;
+        }
+    }
+
+    private static boolean useEngineGroup(Context context) {
+        synchronized (sLock) {
+            if (sUseEngineGroup == null) {
+                SharedPreferences prefs = context.getSharedPreferences(BackgroundFetch.TAG, Context.MODE_PRIVATE);
+                sUseEngineGroup = prefs.getBoolean(KEY_USE_ENGINE_GROUP, false);
+            }
+            return sUseEngineGroup;
+        }
+    }
+
+    /**
+     * Create the background engine, either standalone or spawned from the shared {@link FlutterEngineGroup}.
+     * A spawned engine is run immediately with the provided entrypoint;  a standalone engine is returned idle.
+     */
+    static FlutterEngine createEngine(Context context, DartExecutor.DartEntrypoint entrypoint) {
+        FlutterEngine engine;
+        EngineFactory factory;
+        synchronized (sLock) {
+            factory = sEngineFactory;
+        }
+        boolean fromGroup = useEngineGroup(context);
+        if (factory != null) {
+            engine = factory.createEngine(context, entrypoint);
+        } else if (fromGroup) {
+            FlutterEngineGroup group;
+            synchronized (sLock) {
+                if (sEngineGroup == null) {
+                    sEngineGroup = new FlutterEngineGroup(context.getApplicationContext());
+                }
+                group = sEngineGroup;
+            }
+            engine = group.createAndRunEngine(new FlutterEngineGroup.Options(context).setDartEntrypoint(entrypoint));
+        } else {
+            engine = new FlutterEngine(context);
+        }
+
+        synchronized (sLock) {
+            sEnginesCreated++;
+            sLastEngineFromGroup = fromGroup;
+        }
+        Log.d(BackgroundFetch.TAG, "[HeadlessEngineManager] engine created (engineGroup: " + fromGroup + ")");
+        return engine;
+    }
+
+    /**
+     * Resolve the Dart callback registered by BackgroundFetch.registerHeadlessTask.
+     */
+    @Nullable
+    static FlutterCallbackInformation lookupCallbackInformation(long handle) {
+        EngineFactory factory;
+        synchronized (sLock) {
+            factory = sEngineFactory;
+        }
+        return (factory != null) ? factory.lookupCallbackInformation(handle) : FlutterCallbackInformation.lookupCallbackInformation(handle);
+    }
+
+    /**
+     * A headless task is about to be dispatched.  Cancels any pending idle-eviction.
+     * @param isRunning whether the background engine is already running (ie: a reuse hit).
+     */
+    static void acquire(Context context, String taskId, boolean isRunning) {
+        registerComponentCallbacks(context);
+        synchronized (sLock) {
+            BackgroundFetch.getUiHandler().removeCallbacks(sIdleEvictionTask);
+            sInFlightTasks.add(taskId);
+            if (isRunning) {
+                sHits++;
+            } else {
+                sMisses++;
+            }
+        }
+    }
+
+    /**
+     * A task has finished.  When it was the last in-flight headless task, schedule eviction after the idle TTL.
+     */
+    static void release(Context context, String taskId) {
+        String deferredEvictionReason;
+        synchronized (sLock) {
+            if (!sInFlightTasks.remove(taskId) || !sInFlightTasks.isEmpty()) {
+                return;
+            }
+            deferredEvictionReason = sDeferredEvictionReason;
+        }
+        if (deferredEvictionReason != null) {
+            BackgroundFetch.getUiHandler().post(() -> evict(deferredEvictionReason + " (deferred)"));
+            return;
+        }
+        long ttl = getIdleTtl(context);
+        if (ttl >= 0) {
+            Log.d(BackgroundFetch.TAG, "[HeadlessEngineManager] engine idle, evicting in " + ttl + "ms");
+            BackgroundFetch.getUiHandler().postDelayed(sIdleEvictionTask, ttl);
+        }
+    }
+
+    /**
+     * Destroy the background engine, regardless of in-flight tasks.  Must be called on the main-thread.
+     */
+    static void evict(String reason) {
+        int inFlight;
+        synchronized (sLock) {
+            BackgroundFetch.getUiHandler().removeCallbacks(sIdleEvictionTask);
+            inFlight = sInFlightTasks.size();
+            sInFlightTasks.clear();
+            sDeferredEvictionReason = null;
+        }
+        if (HeadlessTask.destroyBackgroundIsolate(reason)) {
+            Map<String, Object> record = new HashMap<>();
+            record.put("timestamp", System.currentTimeMillis());
+            record.put("reason", reason);
+            record.put("inFlight", inFlight);
+            synchronized (sLock) {
+                sEvictions++;
+                sLastEvictionReason = reason;
+                sEvictionLog.addLast(record);
+                if (sEvictionLog.size() > MAX_EVICTION_RECORDS) sEvictionLog.pollFirst();
+            }
+        }
+    }
+
+    /**
+     * Memory pressure:  evict the engine now if idle, otherwise once the last in-flight task finishes.
+     */
+    static void evictWhenIdle(String reason) {
+        if (!HeadlessTask.isBackgroundIsolateRunning()) return;
+        synchronized (sLock) {
+            if (!sInFlightTasks.isEmpty()) {
+                Log.d(BackgroundFetch.TAG, "[HeadlessEngineManager] " + reason + ":  deferring eviction until " + sInFlightTasks.size() + " task(s) finish");
+                sDeferredEvictionReason = reason;
+                return;
+            }
+        }
+        evict(reason);
+    }
+
+    static Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (sLock) {
+            stats.put("hits", sHits);
+            stats.put("misses", sMisses);
+            stats.put("evictions", sEvictions);
+            // Created - evictions should never exceed 1:  otherwise an engine leaked.
+            stats.put("created", sEnginesCreated);
+            stats.put("lastEvictionReason", sLastEvictionReason);
+            stats.put("evictionLog", new ArrayList<>(sEvictionLog));
+            stats.put("evictionDeferred", sDeferredEvictionReason != null);
+            stats.put("inFlight", sInFlightTasks.size());
+            stats.put("idleTtl", (sIdleTtl != null) ? sIdleTtl : DEFAULT_IDLE_TTL);
+            stats.put("engineGroup", sLastEngineFromGroup);
+        }
+        stats.put("running", HeadlessTask.isBackgroundIsolateRunning());
+        return stats;
+    }
+
+    private static void registerComponentCallbacks(Context context) {
+        synchronized (sLock) {
+            if (sComponentCallbacksRegistered) return;
+            sComponentCallbacksRegistered = true;
+        }
+        context.getApplicationContext().registerComponentCallbacks(new MemoryPressureCallback());
+    }
+
+    static class MemoryPressureCallback implements ComponentCallbacks2 {
+        @Override
+        public void onTrimMemory(int level) {
+            // Ignore TRIM_MEMORY_UI_HIDDEN / RUNNING_MODERATE:  only release the engine when the system is
+            // actually short of memory, or has placed our process on the LRU list where it's a kill candidate.
+            if (level == TRIM_MEMORY_RUNNING_LOW || level == TRIM_MEMORY_RUNNING_CRITICAL || level >= TRIM_MEMORY_BACKGROUND) {
+                evictWhenIdle("trim memory (level " + level + ")");
+            }
+        }
+
+        @Override
+        public void onConfigurationChanged(@NonNull Configuration newConfig) { }
+
+        @Override
+        public void onLowMemory() {
+            evictWhenIdle("low memory");
+        }
+    }
+}
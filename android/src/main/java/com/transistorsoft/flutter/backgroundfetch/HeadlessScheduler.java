@@ -0,0 +1,280 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.transistorsoft.tsbackgroundfetch.BackgroundFetch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Admission control for headless tasks sharing the one background isolate.  At most #KEY_MAX_CONCURRENCY tasks are
+ * in flight at once, and tasks sharing a concurrency group run one at a time.  Tasks which can't run yet wait in a
+ * queue ordered by priority (highest first, then arrival), and are dispatched as earlier tasks finish.
+ *
+ * Each task's priority and concurrency group are persisted at #scheduleTask, since a headless process only
+ * receives the taskId.  They're held in memory, along with the limit, and (re)loaded by #load on the thread-pool:
+ * #admit and #release, on the main-thread, never read SharedPreferences.
+ */
+class HeadlessScheduler {
+    static final String KEY_MAX_CONCURRENCY = "headlessMaxConcurrency";
+    // 0:  unlimited.
+    static final int DEFAULT_MAX_CONCURRENCY = 0;
+    static final String KEY_PRIORITY = "priority";
+    static final String KEY_CONCURRENCY_GROUP = "concurrencyGroup";
+
+    private static final String PREFS_NAME = BackgroundFetch.TAG + ".scheduler";
+    private static final String SEPARATOR = "|";
+    private static final int MAX_WAIT_SAMPLES = 32;
+
+    private static final PriorityQueue<Entry> sQueue = new PriorityQueue<>();
+    // taskId -> concurrency group (or "") of tasks dispatched and not yet finished.
+    private static final Map<String, String> sInFlight = new HashMap<>();
+    // taskId -> options of tasks with a priority or concurrency group.
+    private static final Map<String, Options> sOptions = new HashMap<>();
+    private static Integer sMaxConcurrency;
+    private static boolean sLoaded = false;
+    private static long sSequence = 0;
+
+    private static long sDeferred = 0;
+    // Ring of the queue-wait times (ms) of admitted tasks.
+    private static final long[] sWaits = new long[MAX_WAIT_SAMPLES];
+    private static int sWaitCount = 0;
+
+    /**
+     * Persist the max-in-flight limit.  Called by BackgroundFetchModule#configure.
+     */
+    static void setMaxConcurrency(Context context, int maxConcurrency) {
+        synchronized (sQueue) {
+            sMaxConcurrency = maxConcurrency;
+        }
+        SharedPreferences prefs = context.getSharedPreferences(BackgroundFetch.TAG, Context.MODE_PRIVATE);
+        prefs.edit().putInt(KEY_MAX_CONCURRENCY, maxConcurrency).apply();
+    }
+
+    /**
+     * Load the persisted limit and task options into memory.  Called from the thread-pool (HeadlessTask#loadState)
+     * before a headless task is dispatched.
+     */
+    static void load(Context context) {
+        synchronized (sQueue) {
+            if (sLoaded) return;
+        }
+        SharedPreferences prefs = context.getSharedPreferences(BackgroundFetch.TAG, Context.MODE_PRIVATE);
+        int maxConcurrency = prefs.getInt(KEY_MAX_CONCURRENCY, DEFAULT_MAX_CONCURRENCY);
+        Map<String, Options> stored = new HashMap<>();
+        for (Map.Entry<String, ?> entry : getPrefs(context).getAll().entrySet()) {
+            if (entry.getValue() instanceof String) {
+                stored.put(entry.getKey(), Options.parse((String) entry.getValue()));
+            }
+        }
+        synchronized (sQueue) {
+            if (sLoaded) return;
+            // Anything set by #setMaxConcurrency / #setTaskOptions while we were reading is newer.
+            if (sMaxConcurrency == null) sMaxConcurrency = maxConcurrency;
+            for (Map.Entry<String, Options> entry : stored.entrySet()) {
+                if (!sOptions.containsKey(entry.getKey())) sOptions.put(entry.getKey(), entry.getValue());
+            }
+            sLoaded = true;
+        }
+    }
+
+    static boolean isLoaded() {
+        synchronized (sQueue) {
+            return sLoaded;
+        }
+    }
+
+    // Must hold sQueue.
+    private static int getMaxConcurrency() {
+        return (sMaxConcurrency != null) ? sMaxConcurrency : DEFAULT_MAX_CONCURRENCY;
+    }
+
+    /**
+     * Persist the priority and concurrency group of a TaskConfig.  Called by BackgroundFetchModule#scheduleTask.
+     */
+    static void setTaskOptions(Context context, String taskId, Map<String, Object> params) {
+        Object priority = params.get(KEY_PRIORITY);
+        Object group = params.get(KEY_CONCURRENCY_GROUP);
+        SharedPreferences prefs = getPrefs(context);
+        if (!(priority instanceof Number) && !(group instanceof String)) {
+            synchronized (sQueue) {
+                sOptions.remove(taskId);
+            }
+            if (prefs.contains(taskId)) prefs.edit().remove(taskId).apply();
+            return;
+        }
+        Options options = new Options((priority instanceof Number) ? ((Number) priority).intValue() : 0, (group instanceof String) ? (String) group : "");
+        synchronized (sQueue) {
+            sOptions.put(taskId, options);
+        }
+        prefs.edit().putString(taskId, options.toString()).apply();
+    }
+
+    /**
+     * A headless task is ready to be dispatched.
+     * @return true if it may be dispatched now;  otherwise it is queued and HeadlessTask#execute is called later.
+     */
+    static boolean admit(HeadlessTask task) {
+        String taskId = task.getTaskId();
+        int priority;
+        String group;
+        synchronized (sQueue) {
+            Options options = sOptions.get(taskId);
+            priority = (options != null) ? options.priority : 0;
+            group = (options != null) ? options.group : "";
+            int maxConcurrency = getMaxConcurrency();
+            // Nothing queued is runnable (#release drains all it can), so only this task's own eligibility matters.
+            if (canRun(group, maxConcurrency)) {
+                sInFlight.put(taskId, group);
+                recordWait(0);
+                return true;
+            }
+            sQueue.add(new Entry(task, priority, group, sSequence++));
+            sDeferred++;
+        }
+        Log.d(BackgroundFetch.TAG, "[HeadlessScheduler] deferring " + taskId + " (priority: " + priority + ", group: '" + group + "')");
+        return false;
+    }
+
+    /**
+     * The OS timed-out taskId:  if it's still waiting in the queue, it will never run.  The timeout event itself
+     * bypasses the scheduler.
+     */
+    static void onTimeout(String taskId) {
+        synchronized (sQueue) {
+            Iterator<Entry> iterator = sQueue.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().task.getTaskId().equals(taskId)) {
+                    iterator.remove();
+                    Log.w(BackgroundFetch.TAG, "[HeadlessScheduler] timed-out while queued: " + taskId);
+                }
+            }
+        }
+    }
+
+    /**
+     * taskId has finished:  dispatch whatever can now run, on the main-thread.
+     */
+    static void release(String taskId) {
+        List<HeadlessTask> ready = new ArrayList<>();
+        synchronized (sQueue) {
+            if (sInFlight.remove(taskId) == null) return;
+            int maxConcurrency = getMaxConcurrency();
+            // Highest priority first, but a task blocked only by its group doesn't hold up the others.
+            List<Entry> blocked = new ArrayList<>();
+            long now = SystemClock.elapsedRealtime();
+            while (!sQueue.isEmpty() && (maxConcurrency <= 0 || sInFlight.size() < maxConcurrency)) {
+                Entry entry = sQueue.poll();
+                if (!canRun(entry.group, maxConcurrency)) {
+                    blocked.add(entry);
+                    continue;
+                }
+                sInFlight.put(entry.task.getTaskId(), entry.group);
+                recordWait(now - entry.queuedAt);
+                ready.add(entry.task);
+            }
+            sQueue.addAll(blocked);
+        }
+        for (HeadlessTask task : ready) {
+            BackgroundFetch.getUiHandler().post(task::execute);
+        }
+    }
+
+    /**
+     * The background isolate was destroyed:  forget in-flight tasks and return queued ones for the caller to finish.
+     */
+    static List<HeadlessTask> clear() {
+        List<HeadlessTask> queued = new ArrayList<>();
+        synchronized (sQueue) {
+            while (!sQueue.isEmpty()) {
+                queued.add(sQueue.poll().task);
+            }
+            sInFlight.clear();
+        }
+        return queued;
+    }
+
+    static Map<String, Object> getStats() {
+        List<Long> waits = new ArrayList<>();
+        Map<String, Object> stats;
+        synchronized (sQueue) {
+            for (int i = 0; i < Math.min(sWaitCount, MAX_WAIT_SAMPLES); i++) {
+                waits.add(sWaits[i]);
+            }
+            stats = TaskMetrics.summarize(waits);
+            stats.put("queued", sQueue.size());
+            stats.put("inFlight", sInFlight.size());
+            stats.put("deferred", sDeferred);
+            stats.put("maxConcurrency", getMaxConcurrency());
+        }
+        return stats;
+    }
+
+    // Must hold sQueue.
+    private static void recordWait(long wait) {
+        sWaits[sWaitCount % MAX_WAIT_SAMPLES] = wait;
+        sWaitCount++;
+    }
+
+    // Must hold sQueue.
+    private static boolean canRun(String group, int maxConcurrency) {
+        if (maxConcurrency > 0 && sInFlight.size() >= maxConcurrency) return false;
+        return group.isEmpty() || !sInFlight.containsValue(group);
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * A task's priority and concurrency group ("" for none), persisted as "priority|group".
+     */
+    private static class Options {
+        final int priority;
+        final String group;
+
+        Options(int priority, String group) {
+            this.priority = priority;
+            this.group = group;
+        }
+
+        static Options parse(String value) {
+            int index = value.indexOf(SEPARATOR);
+            return new Options(Integer.parseInt(value.substring(0, index)), value.substring(index + 1));
+        }
+
+        @Override
+        public String toString() {
+            return priority + SEPARATOR + group;
+        }
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        final HeadlessTask task;
+        final int priority;
+        final String group;
+        final long sequence;
+        final long queuedAt = SystemClock.elapsedRealtime();
+
+        Entry(HeadlessTask task, int priority, String group, long sequence) {
+            this.task = task;
+            this.priority = priority;
+            this.group = group;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (priority != other.priority) return Integer.compare(other.priority, priority);
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
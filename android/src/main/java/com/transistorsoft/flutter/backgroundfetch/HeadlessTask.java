@@ -3,6 +3,10 @@ package com.transistorsoft.flutter.backgroundfetch;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.res.AssetManager;
+import android.os.Build;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.Keep;
@@ -11,18 +15,17 @@ import androidx.annotation.NonNull;
 import com.transistorsoft.tsbackgroundfetch.BGTask;
 import com.transistorsoft.tsbackgroundfetch.BackgroundFetch;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.flutter.embedding.engine.FlutterEngine;
 import io.flutter.embedding.engine.dart.DartExecutor;
-import io.flutter.embedding.engine.loader.ApplicationInfoLoader;
 import io.flutter.embedding.engine.loader.FlutterApplicationInfo;
-import io.flutter.plugin.common.JSONMethodCodec;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.view.FlutterCallbackInformation;
@@ -33,6 +36,21 @@ public class HeadlessTask implements MethodChannel.MethodCallHandler, Runnable {
     private static final String KEY_CLIENT_CALLBACK_ID          = "clientCallbackId";
     private static final String METHOD_CHANNEL_NAME             = BackgroundFetchModule.PLUGIN_ID + "/headless";
     private static final String ACTION_INITIALIZED              = "initialized";
+    private static final String ACTION_BATCH                    = "batch";
+
+    // After a flush, events dispatched within this window are coalesced into a single channel invocation.
+    private static final long DISPATCH_COALESCE_WINDOW_MS       = 20L;
+
+    // Bounds on the queue of events received while the background isolate is booting.
+    private static final int MAX_PENDING_DISPATCHES             = 32;
+    private static final long PENDING_DISPATCH_EXPIRY_MS        = 60000L;
+
+    // Acknowledged delivery:  an invocation not acked by Dart within ACK_TIMEOUT_MS (or failed) is re-sent, with
+    // exponential backoff, up to MAX_DELIVERY_ATTEMPTS times before its tasks are finished.
+    private static final long ACK_TIMEOUT_MS                    = 5000L;
+    private static final long RETRY_BACKOFF_MS                  = 250L;
+    private static final int MAX_DELIVERY_ATTEMPTS              = 4;
+    private static final int MAX_ACK_LATENCY_SAMPLES            = 32;
     private Context mContext;
     private static FlutterEngine sBackgroundFlutterEngine;
 
@@ -43,43 +61,183 @@ public class HeadlessTask implements MethodChannel.MethodCallHandler, Runnable {
     private long mRegistrationCallbackId;
     private long mClientCallbackId;
     private BGTask mTask;
+    // Whether this task's trace slice was begun (see PluginTracer#beginTask).
+    private boolean mTaskSliceBegun = false;
+    private long mQueuedAt;
+    private final long mCreatedAt = System.nanoTime();
 
     private static final List<OnInitializedCallback> sOnInitializedListeners = new ArrayList<>();
 
+    // Events which arrived before the Dart client signalled "initialized".  Drained in order by #initialize.
+    private static final ArrayDeque<HeadlessTask> sPendingDispatches = new ArrayDeque<>();
+    private static int sPendingHighWaterMark = 0;
+    private static long sPendingDropped = 0;
+    private static long sPendingExpired = 0;
+
+    // Events awaiting the next coalesced dispatch to the Dart client.
+    private static final List<HeadlessTask> sDispatchBatch = new ArrayList<>();
+    private static final Runnable sFlushDispatchBatch = HeadlessTask::onCoalesceWindowElapsed;
+    // Whether a coalesce-window is open (ie: a flush is scheduled).  Guarded by sDispatchBatch.
+    private static boolean sCoalescing = false;
+    // Set while #drainPendingDispatches dispatches the queued events, which it flushes as one batch.  Main-thread only.
+    private static boolean sDraining = false;
+    private static long sBatchesDispatched = 0;
+    private static int sLargestBatch = 0;
+
+    // Process-wide cache of the persisted callback ids.  RegistrationTask is the only writer of those prefs,
+    // so the cache is filled at registration (or on first read) and replaced on re-registration.
+    private static volatile CallbackIds sCallbackIds;
+    private static long sCallbackCacheHits = 0;
+    private static long sCallbackCacheMisses = 0;
+    private static long sLastDeliveryLatencyUs = -1;
+
+    // First headless dispatch of this process (eg: after boot):  latency from the task firing, and from process start.
+    private static boolean sFirstDispatchRecorded = false;
+    private static long sFirstDispatchLatencyMs = -1;
+    private static long sFirstDispatchSinceProcessStartMs = -1;
+    private static boolean sFirstDispatchWarmRestored = false;
+
+    // Identifies each event so Dart can suppress a redelivered duplicate.
+    private static final AtomicLong sDeliverySequence = new AtomicLong();
+    private final long mDeliveryId = sDeliverySequence.incrementAndGet();
+
+    private static long sDeliveriesAcked = 0;
+    private static long sDeliveryRetries = 0;
+    private static long sDeliveriesFailed = 0;
+    // Ring of first-send -> ack latencies (us).
+    private static final long[] sAckLatencies = new long[MAX_ACK_LATENCY_SAMPLES];
+    private static int sAckLatencyCount = 0;
+
     // Called by BackgroundFetchModule
     static boolean register(final Context context, final List<Object> callbacks) {
-        BackgroundFetch.getThreadPool().execute(new RegistrationTask(context, callbacks));
+        CallbackIds ids = new CallbackIds(toCallbackId(callbacks.get(0)), toCallbackId(callbacks.get(1)));
+        // Serialized with #loadCallbackIds, so a concurrent cold read can't overwrite the new ids with stale ones.
+        synchronized (HeadlessTask.class) {
+            sCallbackIds = ids;
+        }
+        BackgroundFetch.getThreadPool().execute(new RegistrationTask(context, ids));
         return true;
     }
 
     /**
      * Destroy the background {@link FlutterEngine} spawned for headless-task
-     * execution.  Called when the main Activity re-attaches — the headless
-     * engine's purpose is to process events while the main isolate is gone,
-     * so keeping it alive after the main engine returns is both unnecessary
-     * and a source of plugin-channel conflicts that can block the main
-     * engine's boot (manifests as a stuck splash / logo, or as
-     * MissingPluginException on the {@code /methods} channel, when an FGS
-     * kept the process alive post-termination).
+     * execution.  Called by {@link HeadlessEngineManager} when the main Activity
+     * re-attaches — the headless engine's purpose is to process events while the
+     * main isolate is gone, so keeping it alive after the main engine returns is
+     * both unnecessary and a source of plugin-channel conflicts that can block the
+     * main engine's boot (manifests as a stuck splash / logo, or as
+     * MissingPluginException on the {@code /methods} channel, when an FGS kept the
+     * process alive post-termination) — or when the engine has sat idle beyond its TTL.
+     *
+     * @return true if an engine was destroyed.
      */
-    static synchronized void destroyBackgroundIsolate() {
+    static synchronized boolean destroyBackgroundIsolate(String reason) {
+        boolean destroyed = false;
         if (sBackgroundFlutterEngine != null) {
-            Log.d(BackgroundFetch.TAG, "[HeadlessTask] destroying background isolate (main engine attaching)");
+            Log.d(BackgroundFetch.TAG, "[HeadlessTask] destroying background isolate (" + reason + ")");
             sBackgroundFlutterEngine.destroy();
             sBackgroundFlutterEngine = null;
+            destroyed = true;
         }
         if (sDispatchChannel != null) {
             sDispatchChannel.setMethodCallHandler(null);
             sDispatchChannel = null;
         }
         sHeadlessTaskRegistered.set(false);
+        // Nothing is left to deliver queued events to:  release them rather than leave them hanging until the OS timeout.
+        finishPendingDispatches();
+        BackgroundFetch.getUiHandler().removeCallbacks(sFlushDispatchBatch);
+        synchronized (sDispatchBatch) {
+            sCoalescing = false;
+        }
+        finishAll(takeDispatchBatch());
+        finishAll(HeadlessScheduler.clear());
+        return destroyed;
+    }
+
+    static synchronized boolean isBackgroundIsolateRunning() {
+        return sBackgroundFlutterEngine != null;
+    }
+
+    /**
+     * Returns counters describing the queue of events received while the background isolate was booting, the
+     * coalesced dispatches and the callback-id cache.
+     */
+    static Map<String, Object> getDispatchStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (sPendingDispatches) {
+            stats.put("size", sPendingDispatches.size());
+            stats.put("highWaterMark", sPendingHighWaterMark);
+            stats.put("dropped", sPendingDropped);
+            stats.put("expired", sPendingExpired);
+        }
+        synchronized (sOnInitializedListeners) {
+            // Listeners are cleared once the client initializes:  a growing count is a leak.
+            stats.put("onInitializedListeners", sOnInitializedListeners.size());
+        }
+        synchronized (sDispatchBatch) {
+            stats.put("batches", sBatchesDispatched);
+            stats.put("largestBatch", sLargestBatch);
+            stats.put("callbackCacheHits", sCallbackCacheHits);
+            stats.put("callbackCacheMisses", sCallbackCacheMisses);
+            stats.put("lastDeliveryLatencyUs", sLastDeliveryLatencyUs);
+
+            Map<String, Object> firstDispatch = new HashMap<>();
+            firstDispatch.put("latency", sFirstDispatchLatencyMs);
+            firstDispatch.put("sinceProcessStart", sFirstDispatchSinceProcessStartMs);
+            firstDispatch.put("warmRestore", sFirstDispatchWarmRestored);
+            stats.put("firstDispatch", firstDispatch);
+
+            List<Long> latencies = new ArrayList<>();
+            for (int i = 0; i < Math.min(sAckLatencyCount, MAX_ACK_LATENCY_SAMPLES); i++) {
+                latencies.add(sAckLatencies[i]);
+            }
+            Map<String, Object> delivery = TaskMetrics.summarize(latencies);
+            delivery.put("acked", sDeliveriesAcked);
+            delivery.put("retries", sDeliveryRetries);
+            delivery.put("failed", sDeliveriesFailed);
+            stats.put("ackLatencyUs", delivery);
+        }
+        return stats;
     }
 
     public HeadlessTask(Context context, BGTask task) {
         mContext = context;
         mTask = task;
         Log.d(BackgroundFetch.TAG, "\uD83D\uDC80 [HeadlessTask " + task.getTaskId() + "]");
-        BackgroundFetch.getThreadPool().execute(new TaskRunner());
+        if (task.getTimedOut()) {
+            TaskMetrics.mark(task.getTaskId(), TaskMetrics.STAGE_TIMEOUT);
+        } else {
+            TaskMetrics.begin(task.getTaskId(), true);
+            // Cold, the tracing toggle isn't loaded yet:  TaskRunner begins the slice once it is.
+            if (PluginTracer.isLoaded()) {
+                PluginTracer.beginTask(task.getTaskId());
+                mTaskSliceBegun = true;
+            }
+            AdaptiveFetchInterval.onFetch(task.getTaskId());
+        }
+
+        CallbackIds ids = sCallbackIds;
+        if (ids == null || !isStateLoaded()) {
+            synchronized (sDispatchBatch) {
+                sCallbackCacheMisses++;
+            }
+            // Cold:  load the Flutter application-info in parallel with the persisted state, rather than after it.
+            WarmRestore.prefetchApplicationInfo(context.getApplicationContext());
+            BackgroundFetch.getThreadPool().execute(new TaskRunner());
+            return;
+        }
+        // Fast-path:  persisted state already in memory.  Skip the SharedPreferences round-trip through the thread-pool.
+        synchronized (sDispatchBatch) {
+            sCallbackCacheHits++;
+        }
+        mRegistrationCallbackId = ids.registration;
+        mClientCallbackId = ids.client;
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            run();
+        } else {
+            BackgroundFetch.getUiHandler().post(this);
+        }
     }
 
     @Override
@@ -93,73 +251,430 @@ public class HeadlessTask implements MethodChannel.MethodCallHandler, Runnable {
     }
 
     private void initialize() {
-        synchronized (sOnInitializedListeners) {
-            if (!sOnInitializedListeners.isEmpty()) {
-                for (OnInitializedCallback callback : sOnInitializedListeners) {
-                    callback.onInitialized(sBackgroundFlutterEngine);
+        boolean traced = PluginTracer.begin("HeadlessTask.initialize");
+        try {
+            synchronized (sOnInitializedListeners) {
+                if (!sOnInitializedListeners.isEmpty()) {
+                    for (OnInitializedCallback callback : sOnInitializedListeners) {
+                        callback.onInitialized(sBackgroundFlutterEngine);
+                    }
+                    sOnInitializedListeners.clear();
                 }
-                sOnInitializedListeners.clear();
             }
+            sHeadlessTaskRegistered.set(true);
+            drainPendingDispatches();
+        } finally {
+            PluginTracer.end(traced);
         }
-        sHeadlessTaskRegistered.set(true);
-        dispatch();
     }
 
     @Override
     public void run() {
+        if (mTask.getTimedOut()) {
+            // Timeouts bypass the scheduler:  Dart must hear of them immediately.
+            HeadlessScheduler.onTimeout(mTask.getTaskId());
+        } else if (!HeadlessScheduler.admit(this)) {
+            return;
+        }
+        execute();
+    }
+
+    /**
+     * Dispatch this task now.  Called directly by #run or, once admitted, by HeadlessScheduler.
+     */
+    void execute() {
+        HeadlessEngineManager.acquire(mContext, mTask.getTaskId(), isBackgroundIsolateRunning());
         dispatch();
     }
 
+    String getTaskId() {
+        return mTask.getTaskId();
+    }
+
     // Send event to Client.
     private void dispatch() {
-        if (sBackgroundFlutterEngine == null) {
-            startBackgroundIsolate();
+        boolean traced = PluginTracer.begin("HeadlessTask.dispatch", mTask.getTaskId());
+        try {
+            if (sBackgroundFlutterEngine == null && !startBackgroundIsolate()) {
+                return;
+            }
+
+            if (!sHeadlessTaskRegistered.get()) {
+                // Queue up events while background isolate is starting
+                Log.d(BackgroundFetch.TAG, "[HeadlessTask] waiting for client to initialize");
+                enqueue(this);
+                return;
+            }
+
+            // Nothing pending:  send at once, then coalesce whatever follows within the window.  A timeout never waits.
+            boolean flushNow;
+            synchronized (sDispatchBatch) {
+                sDispatchBatch.add(this);
+                flushNow = !sCoalescing || mTask.getTimedOut();
+                if (!sCoalescing) {
+                    sCoalescing = true;
+                    BackgroundFetch.getUiHandler().postDelayed(sFlushDispatchBatch, DISPATCH_COALESCE_WINDOW_MS);
+                }
+            }
+            if (flushNow && !sDraining) {
+                flushDispatchBatch();
+            }
+        } finally {
+            PluginTracer.end(traced);
         }
+    }
 
-        if (!sHeadlessTaskRegistered.get()) {
-            // Queue up events while background isolate is starting
-            Log.d(BackgroundFetch.TAG, "[HeadlessTask] waiting for client to initialize");
-            return;
+    /**
+     * The coalesce-window has elapsed:  send what it collected and keep coalescing for another window, or close it
+     * when nothing arrived.
+     */
+    private static void onCoalesceWindowElapsed() {
+        synchronized (sDispatchBatch) {
+            if (sDispatchBatch.isEmpty()) {
+                sCoalescing = false;
+                return;
+            }
         }
+        BackgroundFetch.getUiHandler().postDelayed(sFlushDispatchBatch, DISPATCH_COALESCE_WINDOW_MS);
+        flushDispatchBatch();
+    }
 
-        JSONObject response = new JSONObject();
+    /**
+     * Send the pending events.  A lone event is sent with the original single-event payload;  several events are
+     * sent as one "batch" invocation carrying a list of tasks.
+     */
+    private static void flushDispatchBatch() {
+        boolean traced = PluginTracer.begin("HeadlessTask.flushDispatchBatch");
         try {
-            response.put("callbackId", mClientCallbackId);
-            response.put("task", mTask.toJson());
-            sDispatchChannel.invokeMethod("", response);
-        } catch (JSONException e) {
-            BackgroundFetch.getInstance(mContext).finish(mTask.getTaskId());
-            Log.e(BackgroundFetch.TAG, e.getMessage());
-            e.printStackTrace();
+            List<HeadlessTask> batch = takeDispatchBatch();
+            if (batch.isEmpty()) return;
+
+            if (sDispatchChannel == null) {
+                // Background isolate was destroyed during the coalesce-window.
+                finishAll(batch);
+                return;
+            }
+            for (HeadlessTask task : batch) {
+                TaskMetrics.mark(task.mTask.getTaskId(), TaskMetrics.STAGE_DISPATCHED);
+                if (!task.mTask.getTimedOut()) {
+                    FinishWatchdog.arm(task.mContext, task.mTask.getTaskId());
+                }
+            }
+            long now = System.nanoTime();
+            synchronized (sDispatchBatch) {
+                sBatchesDispatched++;
+                sLargestBatch = Math.max(sLargestBatch, batch.size());
+                // Task delivery -> dispatch to Dart, including any coalesce-window, engine start or queueing.
+                sLastDeliveryLatencyUs = (now - batch.get(batch.size() - 1).mCreatedAt) / 1000;
+                if (!sFirstDispatchRecorded) {
+                    recordFirstDispatch(batch.get(0));
+                }
+            }
+
+            List<Map<String, Object>> events = new ArrayList<>(batch.size());
+            for (HeadlessTask task : batch) {
+                events.add(task.toEvent());
+            }
+            String method = (events.size() == 1) ? "" : ACTION_BATCH;
+            new Delivery(batch, method, buildPayload(batch.get(0).mClientCallbackId, events)).send();
+        } finally {
+            PluginTracer.end(traced);
         }
     }
 
-    private void startBackgroundIsolate() {
-        if (sBackgroundFlutterEngine != null) {
-            Log.w(BackgroundFetch.TAG, "Background isolate already started");
-            return;
+    // Must hold sDispatchBatch.
+    private static void recordFirstDispatch(HeadlessTask task) {
+        sFirstDispatchRecorded = true;
+        sFirstDispatchLatencyMs = (System.nanoTime() - task.mCreatedAt) / 1000000;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            sFirstDispatchSinceProcessStartMs = SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
         }
+        sFirstDispatchWarmRestored = WarmRestore.isStarted();
+        Log.d(BackgroundFetch.TAG, "[HeadlessTask] first dispatch:  " + sFirstDispatchLatencyMs + "ms after firing, " + sFirstDispatchSinceProcessStartMs + "ms after process start (warmRestore: " + sFirstDispatchWarmRestored + ")");
+    }
 
-        FlutterApplicationInfo info = ApplicationInfoLoader.load(mContext);
-        String appBundlePath = info.flutterAssetsDir;
+    private Map<String, Object> toEvent() {
+        return toEvent(mContext, mDeliveryId, mTask.getTaskId(), mTask.getTimedOut());
+    }
 
-        AssetManager assets = mContext.getAssets();
-        if (!sHeadlessTaskRegistered.get()) {
-            sBackgroundFlutterEngine = new FlutterEngine(mContext);
-            DartExecutor executor = sBackgroundFlutterEngine.getDartExecutor();
-            // Create the Transmitter channel
-            sDispatchChannel = new MethodChannel(executor, METHOD_CHANNEL_NAME, JSONMethodCodec.INSTANCE);
-            sDispatchChannel.setMethodCallHandler(this);
+    static Map<String, Object> toEvent(Context context, long deliveryId, String taskId, boolean timeout) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("deliveryId", deliveryId);
+        event.put("taskId", taskId);
+        event.put("timeout", timeout);
+        Object extras = TaskExtras.get(context, taskId);
+        if (extras != null) event.put(TaskExtras.KEY_EXTRAS, extras);
+        return event;
+    }
 
-            FlutterCallbackInformation callbackInfo = FlutterCallbackInformation.lookupCallbackInformation(mRegistrationCallbackId);
+    /**
+     * Typed fields, encoded by StandardMethodCodec:  no intermediate JSON documents.  A lone event is sent as "task";
+     * a batch as a list of "tasks".
+     */
+    static Map<String, Object> buildPayload(long callbackId, List<Map<String, Object>> events) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("callbackId", callbackId);
+        if (events.size() == 1) {
+            payload.put("task", events.get(0));
+        } else {
+            payload.put("tasks", events);
+        }
+        return payload;
+    }
+
+    private static List<HeadlessTask> takeDispatchBatch() {
+        synchronized (sDispatchBatch) {
+            List<HeadlessTask> batch = new ArrayList<>(sDispatchBatch);
+            sDispatchBatch.clear();
+            return batch;
+        }
+    }
 
-            if (callbackInfo == null) {
-                Log.e(BackgroundFetch.TAG, "Fatal: failed to find callback: " + mRegistrationCallbackId);
-                BackgroundFetch.getInstance(mContext).finish(mTask.getTaskId());
+    private static void finishAll(List<HeadlessTask> tasks) {
+        for (HeadlessTask task : tasks) {
+            task.finishTask();
+        }
+    }
+
+    private boolean startBackgroundIsolate() {
+        boolean traced = PluginTracer.begin("HeadlessTask.startBackgroundIsolate");
+        try {
+            if (sBackgroundFlutterEngine != null) {
+                Log.w(BackgroundFetch.TAG, "Background isolate already started");
+                return true;
+            }
+
+            boolean tracedLoad = PluginTracer.begin("ApplicationInfoLoader.load");
+            FlutterApplicationInfo info = WarmRestore.getApplicationInfo(mContext.getApplicationContext());
+            PluginTracer.end(tracedLoad);
+            String appBundlePath = info.flutterAssetsDir;
+
+            AssetManager assets = mContext.getAssets();
+            if (!sHeadlessTaskRegistered.get()) {
+                TaskMetrics.mark(mTask.getTaskId(), TaskMetrics.STAGE_ENGINE_START);
+                FlutterCallbackInformation callbackInfo = HeadlessEngineManager.lookupCallbackInformation(mRegistrationCallbackId);
+
+                if (callbackInfo == null) {
+                    Log.e(BackgroundFetch.TAG, "Fatal: failed to find callback: " + mRegistrationCallbackId);
+                    finishTask();
+                    // The client will never initialize:  release anything already waiting on it.
+                    finishPendingDispatches();
+                    return false;
+                }
+                // An engine spawned from a FlutterEngineGroup is run by name rather than by callback-handle.
+                DartExecutor.DartEntrypoint entrypoint = new DartExecutor.DartEntrypoint(appBundlePath, callbackInfo.callbackLibraryPath, callbackInfo.callbackName);
+                boolean tracedCreate = PluginTracer.begin("HeadlessEngineManager.createEngine");
+                sBackgroundFlutterEngine = HeadlessEngineManager.createEngine(mContext, entrypoint);
+                PluginTracer.end(tracedCreate);
+                DartExecutor executor = sBackgroundFlutterEngine.getDartExecutor();
+                // Create the Transmitter channel
+                sDispatchChannel = new MethodChannel(executor, METHOD_CHANNEL_NAME);
+                sDispatchChannel.setMethodCallHandler(this);
+
+                if (!executor.isExecutingDart()) {
+                    DartExecutor.DartCallback dartCallback = new DartExecutor.DartCallback(assets, appBundlePath, callbackInfo);
+                    boolean tracedExecute = PluginTracer.begin("DartExecutor.executeDartCallback");
+                    executor.executeDartCallback(dartCallback);
+                    PluginTracer.end(tracedExecute);
+                }
+            }
+            return true;
+        } finally {
+            PluginTracer.end(traced);
+        }
+    }
+
+    /**
+     * Queue an event until the Dart client signals it is initialized.  When the queue is full, the oldest
+     * event is dropped and finished so the OS isn't left waiting on it.
+     */
+    private static void enqueue(HeadlessTask task) {
+        List<HeadlessTask> released = new ArrayList<>();
+        synchronized (sPendingDispatches) {
+            long now = SystemClock.elapsedRealtime();
+            // Prune events which have waited too long
+            while (!sPendingDispatches.isEmpty() && sPendingDispatches.peekFirst().isExpired(now)) {
+                released.add(sPendingDispatches.pollFirst());
+                sPendingExpired++;
+            }
+            if (sPendingDispatches.size() >= MAX_PENDING_DISPATCHES) {
+                released.add(sPendingDispatches.pollFirst());
+                sPendingDropped++;
+            }
+            task.mQueuedAt = now;
+            sPendingDispatches.addLast(task);
+            sPendingHighWaterMark = Math.max(sPendingHighWaterMark, sPendingDispatches.size());
+        }
+        for (HeadlessTask expired : released) {
+            Log.w(BackgroundFetch.TAG, "[HeadlessTask] dropped pending event: " + expired.mTask.getTaskId());
+            expired.finishTask();
+        }
+    }
+
+    /**
+     * Dispatch queued events, in the order received, once the Dart client has initialized.
+     */
+    private static void drainPendingDispatches() {
+        List<HeadlessTask> pending;
+        synchronized (sPendingDispatches) {
+            pending = new ArrayList<>(sPendingDispatches);
+            sPendingDispatches.clear();
+        }
+        long now = SystemClock.elapsedRealtime();
+        // The queued events go to Dart as one batch.
+        sDraining = true;
+        try {
+            for (HeadlessTask task : pending) {
+                if (task.isExpired(now)) {
+                    synchronized (sPendingDispatches) {
+                        sPendingExpired++;
+                    }
+                    Log.w(BackgroundFetch.TAG, "[HeadlessTask] pending event expired: " + task.mTask.getTaskId());
+                    task.finishTask();
+                } else {
+                    TaskMetrics.mark(task.mTask.getTaskId(), TaskMetrics.STAGE_INITIALIZED);
+                    task.dispatch();
+                }
+            }
+        } finally {
+            sDraining = false;
+        }
+        flushDispatchBatch();
+        Log.d(BackgroundFetch.TAG, "[HeadlessTask] drained pending events: " + getDispatchStats());
+    }
+
+    private static void finishPendingDispatches() {
+        List<HeadlessTask> pending;
+        synchronized (sPendingDispatches) {
+            pending = new ArrayList<>(sPendingDispatches);
+            sPendingDispatches.clear();
+            sPendingDropped += pending.size();
+        }
+        finishAll(pending);
+    }
+
+    private boolean isExpired(long now) {
+        return (now - mQueuedAt) > PENDING_DISPATCH_EXPIRY_MS;
+    }
+
+    private void finishTask() {
+        BackgroundFetchModule.finishTask(mContext, mTask.getTaskId());
+    }
+
+    // There is weirdness with the class of these callbacks (Integer vs Long) between assembleDebug vs assembleRelease.
+    private static long toCallbackId(Object callback) {
+        if (callback instanceof Long) {
+            return (Long) callback;
+        } else if (callback instanceof Integer) {
+            return ((Integer) callback).longValue();
+        }
+        return -1;
+    }
+
+    /**
+     * One coalesced invocation of the Dart dispatcher, re-sent until Dart acknowledges it by completing the
+     * invocation's Result.  All callbacks run on the main-thread.
+     */
+    static class Delivery implements MethodChannel.Result, Runnable {
+        private final List<HeadlessTask> mBatch;
+        private final String mMethod;
+        private final Map<String, Object> mPayload;
+        private final long mFirstSentAt = System.nanoTime();
+        private int mAttempts = 0;
+        private boolean mSettled = false;
+
+        // Fires when an attempt goes unacknowledged.
+        private final Runnable mAckTimeout = () -> onFailure("no ack after " + ACK_TIMEOUT_MS + "ms");
+
+        Delivery(List<HeadlessTask> batch, String method, Map<String, Object> payload) {
+            mBatch = batch;
+            mMethod = method;
+            mPayload = payload;
+        }
+
+        void send() {
+            // A retry may still fire after the ack of an earlier attempt arrived.
+            if (mSettled) return;
+            MethodChannel channel = sDispatchChannel;
+            if (channel == null) {
+                // Background isolate was destroyed awaiting a retry.
+                mSettled = true;
+                finishAll(mBatch);
+                return;
+            }
+            mAttempts++;
+            mPayload.put("attempt", mAttempts);
+            BackgroundFetch.getUiHandler().postDelayed(mAckTimeout, ACK_TIMEOUT_MS);
+            channel.invokeMethod(mMethod, mPayload, this);
+        }
+
+        // Retry.
+        @Override
+        public void run() {
+            send();
+        }
+
+        @Override
+        public void success(Object result) {
+            if (Boolean.FALSE.equals(result)) {
+                // Dart received the event but could not run it (eg: callback lookup failed).
+                onFailure("rejected");
                 return;
             }
-            DartExecutor.DartCallback dartCallback = new DartExecutor.DartCallback(assets, appBundlePath, callbackInfo);
-            executor.executeDartCallback(dartCallback);
+            if (mSettled) return;
+            mSettled = true;
+            BackgroundFetch.getUiHandler().removeCallbacks(mAckTimeout);
+            // An attempt which timed-out may have been acked late, with its retry already queued.
+            BackgroundFetch.getUiHandler().removeCallbacks(this);
+            long latency = (System.nanoTime() - mFirstSentAt) / 1000;
+            synchronized (sDispatchBatch) {
+                sDeliveriesAcked++;
+                sAckLatencies[sAckLatencyCount % MAX_ACK_LATENCY_SAMPLES] = latency;
+                sAckLatencyCount++;
+            }
+        }
+
+        @Override
+        public void error(@NonNull String errorCode, String errorMessage, Object errorDetails) {
+            onFailure(errorCode + ": " + errorMessage);
+        }
+
+        @Override
+        public void notImplemented() {
+            onFailure("no handler");
+        }
+
+        private void onFailure(String reason) {
+            if (mSettled) return;
+            BackgroundFetch.getUiHandler().removeCallbacks(mAckTimeout);
+            if (mAttempts >= MAX_DELIVERY_ATTEMPTS) {
+                mSettled = true;
+                synchronized (sDispatchBatch) {
+                    sDeliveriesFailed++;
+                }
+                Log.e(BackgroundFetch.TAG, "[HeadlessTask] delivery failed after " + mAttempts + " attempts (" + reason + ").  Finishing " + mBatch.size() + " task(s)");
+                finishAll(mBatch);
+                return;
+            }
+            long backoff = RETRY_BACKOFF_MS << (mAttempts - 1);
+            synchronized (sDispatchBatch) {
+                sDeliveryRetries++;
+            }
+            Log.w(BackgroundFetch.TAG, "[HeadlessTask] delivery attempt " + mAttempts + " failed (" + reason + ").  Retrying in " + backoff + "ms");
+            BackgroundFetch.getUiHandler().postDelayed(this, backoff);
+        }
+    }
+
+    /**
+     * Immutable pair of callback ids, swapped atomically on re-registration.
+     */
+    static class CallbackIds {
+        final long registration;
+        final long client;
+
+        CallbackIds(long registration, long client) {
+            this.registration = registration;
+            this.client = client;
         }
     }
 
@@ -168,47 +683,80 @@ public class HeadlessTask implements MethodChannel.MethodCallHandler, Runnable {
      */
     static class RegistrationTask implements Runnable {
         private Context mContext;
-        private List<Object> mCallbacks;
+        private CallbackIds mCallbackIds;
 
-        RegistrationTask(Context context, List<Object>callbacks) {
+        RegistrationTask(Context context, CallbackIds callbackIds) {
             mContext = context;
-            mCallbacks = callbacks;
+            mCallbackIds = callbackIds;
         }
 
         @Override
         public void run() {
             SharedPreferences prefs = mContext.getSharedPreferences(BackgroundFetch.TAG, Context.MODE_PRIVATE);
 
-            // There is weirdness with the class of these callbacks (Integer vs Long) between assembleDebug vs assembleRelease.
-            Object cb1 = mCallbacks.get(0);
-            Object cb2 = mCallbacks.get(1);
-
             SharedPreferences.Editor editor = prefs.edit();
-            if (cb1.getClass() == Long.class) {
-                editor.putLong(KEY_REGISTRATION_CALLBACK_ID, (Long) cb1);
-            } else if (cb1.getClass() == Integer.class) {
-                editor.putLong(KEY_REGISTRATION_CALLBACK_ID, ((Integer) cb1).longValue());
-            }
+            editor.putLong(KEY_REGISTRATION_CALLBACK_ID, mCallbackIds.registration);
+            editor.putLong(KEY_CLIENT_CALLBACK_ID, mCallbackIds.client);
+            editor.apply();
+            // Warm the rest of the state, so this process's first headless task takes the fast-path.
+            loadState(mContext);
+        }
+    }
 
-            if (cb2.getClass() == Long.class) {
-                editor.putLong(KEY_CLIENT_CALLBACK_ID, (Long) cb2);
-            } else if (cb2.getClass() == Integer.class) {
-                editor.putLong(KEY_CLIENT_CALLBACK_ID, ((Integer) cb2).longValue());
+    /**
+     * Returns the callback ids, reading them from SharedPreferences and warming the cache when cold.  Called from
+     * the thread-pool (#loadState).
+     */
+    private static CallbackIds loadCallbackIds(Context context) {
+        CallbackIds ids = sCallbackIds;
+        if (ids != null) return ids;
+        SharedPreferences prefs = context.getSharedPreferences(BackgroundFetch.TAG, Context.MODE_PRIVATE);
+        ids = new CallbackIds(prefs.getLong(KEY_REGISTRATION_CALLBACK_ID, -1), prefs.getLong(KEY_CLIENT_CALLBACK_ID, -1));
+        // Warm the cache for subsequent tasks, unless a registration raced ahead of us.
+        synchronized (HeadlessTask.class) {
+            if (sCallbackIds == null) {
+                sCallbackIds = ids;
             }
-            editor.apply();
+            return sCallbackIds;
         }
     }
 
+    /**
+     * Load everything a headless task reads at dispatch into memory:  the callback ids, the scheduler's options,
+     * the tasks' extras and the tracing toggle.
+     * Called from the thread-pool (TaskRunner, RegistrationTask, WarmRestore).
+     */
+    static void loadState(Context context) {
+        loadCallbackIds(context);
+        HeadlessScheduler.load(context);
+        TaskExtras.load(context);
+        PluginTracer.load(context);
+    }
+
+    private static boolean isStateLoaded() {
+        return HeadlessScheduler.isLoaded() && TaskExtras.isLoaded() && PluginTracer.isLoaded();
+    }
+
     /**
      * Load from SharedPreferences in a background-thread then dispatch on the main-thread.
+     * Only used when the in-memory state is cold (ie: first task after process launch).
      */
     class TaskRunner implements Runnable {
         @Override
         public void run() {
-            SharedPreferences prefs = mContext.getSharedPreferences(BackgroundFetch.TAG, Context.MODE_PRIVATE);
-            mRegistrationCallbackId = prefs.getLong(KEY_REGISTRATION_CALLBACK_ID, -1);
-            mClientCallbackId = prefs.getLong(KEY_CLIENT_CALLBACK_ID, -1);
-
+            boolean traced = PluginTracer.begin("HeadlessTask.TaskRunner");
+            try {
+                loadState(mContext);
+                if (!mTask.getTimedOut() && !mTaskSliceBegun) {
+                    PluginTracer.beginTask(mTask.getTaskId());
+                    mTaskSliceBegun = true;
+                }
+                CallbackIds ids = sCallbackIds;
+                mRegistrationCallbackId = ids.registration;
+                mClientCallbackId = ids.client;
+            } finally {
+                PluginTracer.end(traced);
+            }
             BackgroundFetch.getUiHandler().post(HeadlessTask.this);
         }
     }
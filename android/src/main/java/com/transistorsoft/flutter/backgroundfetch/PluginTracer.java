@@ -0,0 +1,75 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.tracing.Trace;
+
+import com.transistorsoft.tsbackgroundfetch.BackgroundFetch;
+
+/**
+ * Systrace / Perfetto instrumentation of the fetch and headless lifecycle, behind a runtime toggle.  When disabled,
+ * each call costs a volatile read:  section names are only built when tracing.  The toggle is read from
+ * SharedPreferences only off the main-thread, by #load;  until loaded, tracing is off.
+ *
+ * Synchronous sections are begun with #begin, which returns whether a section was opened, and closed by passing
+ * that token to #end, so toggling mid-section can't unbalance the stack.  Each task is also traced as an async
+ * slice keyed by its taskId, from the OS firing it until it's finished.
+ */
+class PluginTracer {
+    static final String KEY_ENABLED = "enableTracing";
+
+    private static final String TASK_SLICE_PREFIX = "BackgroundFetch task ";
+
+    private static volatile boolean sEnabled = false;
+    private static volatile boolean sLoaded = false;
+
+    /**
+     * Persist the toggle.  Called by BackgroundFetchModule#configure.
+     */
+    static void setEnabled(Context context, boolean enabled) {
+        sEnabled = enabled;
+        sLoaded = true;
+        SharedPreferences prefs = context.getSharedPreferences(BackgroundFetch.TAG, Context.MODE_PRIVATE);
+        prefs.edit().putBoolean(KEY_ENABLED, enabled).apply();
+    }
+
+    /**
+     * Load the persisted toggle (eg: in a headless process, where Dart never calls #configure).  Called off the
+     * main-thread:  with the rest of the headless state (HeadlessTask#loadState) and on the /methods TaskQueue.
+     */
+    static void load(Context context) {
+        if (sLoaded) return;
+        SharedPreferences prefs = context.getSharedPreferences(BackgroundFetch.TAG, Context.MODE_PRIVATE);
+        sEnabled = prefs.getBoolean(KEY_ENABLED, false);
+        sLoaded = true;
+    }
+
+    static boolean isLoaded() {
+        return sLoaded;
+    }
+
+    static boolean begin(String name) {
+        if (!sEnabled) return false;
+        Trace.beginSection(name);
+        return true;
+    }
+
+    static boolean begin(String name, String detail) {
+        if (!sEnabled) return false;
+        Trace.beginSection(name + " " + detail);
+        return true;
+    }
+
+    static void end(boolean traced) {
+        if (traced) Trace.endSection();
+    }
+
+    static void beginTask(String taskId) {
+        if (sEnabled) Trace.beginAsyncSection(TASK_SLICE_PREFIX + taskId, taskId.hashCode());
+    }
+
+    static void endTask(String taskId) {
+        if (sEnabled) Trace.endAsyncSection(TASK_SLICE_PREFIX + taskId, taskId.hashCode());
+    }
+}
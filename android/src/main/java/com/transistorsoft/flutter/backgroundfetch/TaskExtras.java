@@ -0,0 +1,168 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+
+import com.transistorsoft.tsbackgroundfetch.BackgroundFetch;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.StandardMessageCodec;
+
+/**
+ * Persists the opaque TaskConfig#extras payload of each task and attaches it to the task's fetch / headless events,
+ * so Dart learns what a task is for without reloading its own state.
+ *
+ * Extras are stored in their StandardMessageCodec encoding:  a map or byte[] decodes to exactly what Dart provided,
+ * and a byte[] is delivered as-is (arriving in Dart as a Uint8List) without any intermediate re-encoding.
+ *
+ * Decoding happens off the main-thread:  #load decodes every stored record on the thread-pool (HeadlessTask#loadState)
+ * or the method-channel's background queue (BackgroundFetchModule#configure), before any event needs them.
+ */
+class TaskExtras {
+    static final String KEY_EXTRAS = "extras";
+    // Cap (bytes, encoded) on a task's extras:  they're held in memory, persisted and sent with every event.
+    static final int MAX_SIZE = 4 * 1024;
+
+    private static final String PREFS_NAME = BackgroundFetch.TAG + ".extras";
+    // Decoded [periodic, extras] records by taskId.  NONE caches the absence of extras.
+    private static final Map<String, List<?>> sCache = new HashMap<>();
+    private static final List<?> NONE = Collections.emptyList();
+    // Whether every stored record is in sCache:  a miss then means "no extras".
+    private static boolean sLoaded = false;
+
+    /**
+     * Decode all stored extras into memory.  Must not be called on the main-thread.
+     */
+    static void load(Context context) {
+        synchronized (sCache) {
+            if (sLoaded) return;
+        }
+        Map<String, List<?>> stored = new HashMap<>();
+        for (Map.Entry<String, ?> entry : getPrefs(context).getAll().entrySet()) {
+            if (entry.getValue() instanceof String) {
+                stored.put(entry.getKey(), decode((String) entry.getValue()));
+            }
+        }
+        synchronized (sCache) {
+            if (sLoaded) return;
+            // Anything #set / #remove while we were reading is newer.
+            for (Map.Entry<String, List<?>> entry : stored.entrySet()) {
+                if (!sCache.containsKey(entry.getKey())) sCache.put(entry.getKey(), entry.getValue());
+            }
+            sLoaded = true;
+        }
+    }
+
+    static boolean isLoaded() {
+        synchronized (sCache) {
+            return sLoaded;
+        }
+    }
+
+    /**
+     * @return the encoded size (bytes) of a TaskConfig's extras;  0 when it has none.
+     */
+    static int sizeOf(Map<String, Object> params) {
+        Object extras = params.get(KEY_EXTRAS);
+        return (extras != null) ? encode(extras).length : 0;
+    }
+
+    /**
+     * Persist (or clear) the extras of a TaskConfig.  Called by BackgroundFetchModule#scheduleTask, which rejects
+     * extras larger than MAX_SIZE.
+     */
+    static void set(Context context, String taskId, Map<String, Object> params) {
+        Object extras = params.get(KEY_EXTRAS);
+        SharedPreferences prefs = getPrefs(context);
+        synchronized (sCache) {
+            if (extras == null) {
+                sCache.put(taskId, NONE);
+                if (prefs.contains(taskId)) prefs.edit().remove(taskId).apply();
+                return;
+            }
+            // One-shot tasks' extras are discarded once finished.
+            boolean periodic = Boolean.TRUE.equals(params.get("periodic"));
+            List<Object> record = Arrays.asList(periodic, extras);
+            sCache.put(taskId, record);
+            prefs.edit().putString(taskId, Base64.encodeToString(encode(record), Base64.NO_WRAP)).apply();
+        }
+    }
+
+    /**
+     * @return the extras of taskId, or null.
+     */
+    static Object get(Context context, String taskId) {
+        synchronized (sCache) {
+            List<?> record = getRecord(context, taskId);
+            return (record != NONE) ? record.get(1) : null;
+        }
+    }
+
+    /**
+     * taskId has finished:  discard the extras of a one-shot task.
+     */
+    static void onFinish(Context context, String taskId) {
+        synchronized (sCache) {
+            List<?> record = getRecord(context, taskId);
+            if (record != NONE && !Boolean.TRUE.equals(record.get(0))) {
+                remove(context, taskId);
+            }
+        }
+    }
+
+    /**
+     * Forget the extras of taskId, or of all tasks when taskId is null (ie: #stop).
+     */
+    static void remove(Context context, String taskId) {
+        synchronized (sCache) {
+            if (taskId == null) {
+                sCache.clear();
+                getPrefs(context).edit().clear().apply();
+            } else {
+                sCache.put(taskId, NONE);
+                getPrefs(context).edit().remove(taskId).apply();
+            }
+        }
+    }
+
+    // Must hold sCache.
+    private static List<?> getRecord(Context context, String taskId) {
+        List<?> record = sCache.get(taskId);
+        if (record == null) {
+            if (sLoaded) return NONE;
+            // Not yet prefetched:  decode just this one.
+            String stored = getPrefs(context).getString(taskId, null);
+            record = (stored != null) ? decode(stored) : NONE;
+            sCache.put(taskId, record);
+        }
+        return record;
+    }
+
+    private static byte[] encode(Object value) {
+        ByteBuffer encoded = StandardMessageCodec.INSTANCE.encodeMessage(value);
+        // The codec returns its buffer positioned after the encoded bytes.
+        encoded.flip();
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return bytes;
+    }
+
+    private static List<?> decode(String stored) {
+        byte[] bytes = Base64.decode(stored, Base64.NO_WRAP);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.rewind();
+        return (List<?>) StandardMessageCodec.INSTANCE.decodeMessage(buffer);
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
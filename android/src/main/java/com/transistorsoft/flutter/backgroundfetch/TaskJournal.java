@@ -0,0 +1,144 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.transistorsoft.tsbackgroundfetch.BackgroundFetch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only history of task executions, kept in a fixed-size ring of binary records in a memory-mapped file.
+ * Appending a record is a handful of stores into the mapping:  the kernel writes the pages back, so the journal
+ * survives process death without an fsync on the write path.  Opening the file and appending happen on the
+ * thread-pool, never on the main-thread.
+ *
+ * Layout:  a 16-byte header (magic, version, capacity, records written) followed by CAPACITY 64-byte records:
+ *   long  firedAt (epoch ms)
+ *   int   duration (ms;  -1 if unknown)
+ *   byte  path (0: foreground, 1: headless)
+ *   byte  outcome (BackgroundFetch.FETCH_RESULT_*;  -1 if not reported)
+ *   byte  timeout (0 | 1)
+ *   byte  taskId length
+ *   48b   taskId (UTF-8, truncated)
+ */
+class TaskJournal {
+    static final int PATH_FOREGROUND = 0;
+    static final int PATH_HEADLESS   = 1;
+    static final int OUTCOME_NONE    = -1;
+
+    private static final String FILE_NAME = BackgroundFetch.TAG + ".journal";
+    private static final int MAGIC = 0x54534A31;  // "TSJ1"
+    private static final int VERSION = 1;
+    private static final int CAPACITY = 512;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 64;
+    private static final int MAX_TASK_ID_BYTES = 48;
+
+    private static MappedByteBuffer sBuffer;
+    private static boolean sOpenFailed = false;
+
+    /**
+     * Record a finished task.  Returns immediately:  the record is appended on the thread-pool.
+     */
+    static void record(Context context, String taskId, TaskMetrics.Timeline timeline, int outcome) {
+        if (timeline == null) return;
+        final Context appContext = context.getApplicationContext();
+        BackgroundFetch.getThreadPool().execute(() -> append(appContext, taskId, timeline, outcome));
+    }
+
+    @VisibleForTesting
+    static synchronized void append(Context context, String taskId, TaskMetrics.Timeline timeline, int outcome) {
+        MappedByteBuffer buffer = open(context);
+        if (buffer == null) return;
+
+        byte[] id = taskId.getBytes(StandardCharsets.UTF_8);
+        int idLength = Math.min(id.length, MAX_TASK_ID_BYTES);
+        int written = buffer.getInt(12);
+        int offset = HEADER_SIZE + (written % CAPACITY) * RECORD_SIZE;
+
+        buffer.putLong(offset, timeline.firedAt);
+        buffer.putInt(offset + 8, (int) timeline.duration);
+        buffer.put(offset + 12, (byte) (timeline.headless ? PATH_HEADLESS : PATH_FOREGROUND));
+        buffer.put(offset + 13, (byte) outcome);
+        buffer.put(offset + 14, (byte) (timeline.timeout ? 1 : 0));
+        buffer.put(offset + 15, (byte) idLength);
+        for (int i = 0; i < idLength; i++) {
+            buffer.put(offset + 16 + i, id[i]);
+        }
+        // Publish the record only once it's complete.
+        buffer.putInt(12, written + 1);
+    }
+
+    /**
+     * Returns records, oldest first, fired within [start, end] (epoch ms;  either may be null) and, when provided,
+     * with the given taskId.
+     */
+    static synchronized List<Object> query(Context context, Long start, Long end, String taskId) {
+        List<Object> records = new ArrayList<>();
+        MappedByteBuffer buffer = open(context);
+        if (buffer == null) return records;
+
+        int written = buffer.getInt(12);
+        int count = Math.min(written, CAPACITY);
+        for (int i = written - count; i < written; i++) {
+            int offset = HEADER_SIZE + (i % CAPACITY) * RECORD_SIZE;
+            long firedAt = buffer.getLong(offset);
+            if ((start != null && firedAt < start) || (end != null && firedAt > end)) continue;
+
+            int idLength = buffer.get(offset + 15);
+            if (idLength < 0 || idLength > MAX_TASK_ID_BYTES) continue;
+            byte[] id = new byte[idLength];
+            for (int j = 0; j < idLength; j++) {
+                id[j] = buffer.get(offset + 16 + j);
+            }
+            String recordTaskId = new String(id, StandardCharsets.UTF_8);
+            if (taskId != null && !taskId.equals(recordTaskId)) continue;
+
+            Map<String, Object> record = new HashMap<>();
+            record.put("taskId", recordTaskId);
+            record.put("firedAt", firedAt);
+            record.put("duration", buffer.getInt(offset + 8));
+            record.put("headless", buffer.get(offset + 12) == PATH_HEADLESS);
+            record.put("outcome", (int) buffer.get(offset + 13));
+            record.put("timeout", buffer.get(offset + 14) == 1);
+            records.add(record);
+        }
+        return records;
+    }
+
+    // Must hold TaskJournal.class.
+    private static MappedByteBuffer open(Context context) {
+        if (sBuffer != null || sOpenFailed) return sBuffer;
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        long size = HEADER_SIZE + (long) CAPACITY * RECORD_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() != size) raf.setLength(size);
+            // The mapping remains valid once the file is closed.
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != CAPACITY) {
+                for (int i = 0; i < size; i += 8) buffer.putLong(i, 0);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, CAPACITY);
+                buffer.putInt(12, 0);
+            }
+            sBuffer = buffer;
+        } catch (IOException e) {
+            Log.e(BackgroundFetch.TAG, "[TaskJournal] failed to open " + file + ": " + e.getMessage());
+            sOpenFailed = true;
+        }
+        return sBuffer;
+    }
+}
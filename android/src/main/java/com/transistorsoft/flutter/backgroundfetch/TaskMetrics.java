@@ -0,0 +1,156 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records a latency timeline for recent tasks, from the OS firing the task through to Dart calling #finish.
+ * Timelines are kept in a fixed-size ring of primitive arrays:  recording a stage is a map lookup and an
+ * array store, with no allocation outside of #begin.
+ */
+class TaskMetrics {
+    static final int STAGE_FIRED           = 0;
+    static final int STAGE_ENGINE_START    = 1;
+    static final int STAGE_INITIALIZED     = 2;
+    static final int STAGE_DISPATCHED      = 3;
+    static final int STAGE_TIMEOUT         = 4;
+    static final int STAGE_FINISHED        = 5;
+    private static final int STAGE_COUNT   = 6;
+
+    private static final String[] STAGE_NAMES = {"fired", "engineStart", "initialized", "dispatched", "timeout", "finished"};
+
+    private static final int CAPACITY = 64;
+
+    private static final String[] sTaskIds = new String[CAPACITY];
+    private static final boolean[] sHeadless = new boolean[CAPACITY];
+    private static final long[][] sTimestamps = new long[CAPACITY][STAGE_COUNT];
+    private static int sNext = 0;
+    // taskId -> slot of its most recent, unfinished timeline.
+    private static final Map<String, Integer> sActive = new HashMap<>();
+
+    /**
+     * Start a new timeline for a task the OS has just fired.
+     */
+    static synchronized void begin(String taskId, boolean headless) {
+        int slot = sNext;
+        sNext = (sNext + 1) % CAPACITY;
+        String evicted = sTaskIds[slot];
+        if (evicted != null) {
+            Integer active = sActive.get(evicted);
+            if (active != null && active == slot) sActive.remove(evicted);
+        }
+        sTaskIds[slot] = taskId;
+        sHeadless[slot] = headless;
+        Arrays.fill(sTimestamps[slot], 0);
+        sTimestamps[slot][STAGE_FIRED] = SystemClock.elapsedRealtime();
+        sActive.put(taskId, slot);
+    }
+
+    /**
+     * Record a stage of a task's timeline.  Only the first occurrence of each stage is kept.
+     */
+    static synchronized void mark(String taskId, int stage) {
+        Integer slot = sActive.get(taskId);
+        if (slot == null || sTimestamps[slot][stage] != 0) return;
+        sTimestamps[slot][stage] = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Task has been finished:  close its timeline.
+     * @return a summary of the closed timeline, or null if the task has none.
+     */
+    static synchronized Timeline end(String taskId) {
+        mark(taskId, STAGE_FINISHED);
+        Integer slot = sActive.remove(taskId);
+        if (slot == null) return null;
+        long[] t = sTimestamps[slot];
+        long duration = (t[STAGE_DISPATCHED] != 0) ? t[STAGE_FINISHED] - t[STAGE_DISPATCHED] : -1;
+        long firedAt = System.currentTimeMillis() - (SystemClock.elapsedRealtime() - t[STAGE_FIRED]);
+        return new Timeline(firedAt, duration, sHeadless[slot], t[STAGE_TIMEOUT] != 0);
+    }
+
+    /**
+     * Returns p50 / p95 / max summaries of cold-start (fired -> initialized), dispatch (fired -> dispatched) and
+     * task-duration (dispatched -> finished) latencies, in ms, along with the raw timelines.
+     */
+    static synchronized Map<String, Object> getMetrics() {
+        List<Long> coldStart = new ArrayList<>();
+        List<Long> dispatch = new ArrayList<>();
+        List<Long> duration = new ArrayList<>();
+        List<Object> timelines = new ArrayList<>();
+
+        for (int i = 0; i < CAPACITY; i++) {
+            // Oldest first.
+            int slot = (sNext + i) % CAPACITY;
+            if (sTaskIds[slot] == null) continue;
+            long[] t = sTimestamps[slot];
+            if (t[STAGE_ENGINE_START] != 0 && t[STAGE_INITIALIZED] != 0) {
+                coldStart.add(t[STAGE_INITIALIZED] - t[STAGE_FIRED]);
+            }
+            if (t[STAGE_DISPATCHED] != 0) {
+                dispatch.add(t[STAGE_DISPATCHED] - t[STAGE_FIRED]);
+                if (t[STAGE_FINISHED] != 0) {
+                    duration.add(t[STAGE_FINISHED] - t[STAGE_DISPATCHED]);
+                }
+            }
+            Map<String, Object> timeline = new HashMap<>();
+            timeline.put("taskId", sTaskIds[slot]);
+            timeline.put("headless", sHeadless[slot]);
+            for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                if (t[stage] != 0) timeline.put(STAGE_NAMES[stage], t[stage]);
+            }
+            timelines.add(timeline);
+        }
+
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("coldStart", summarize(coldStart));
+        metrics.put("dispatch", summarize(dispatch));
+        metrics.put("duration", summarize(duration));
+        metrics.put("tasks", timelines);
+        return metrics;
+    }
+
+    static Map<String, Object> summarize(List<Long> samples) {
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("count", samples.size());
+        if (samples.isEmpty()) return summary;
+
+        long[] sorted = new long[samples.size()];
+        for (int i = 0; i < sorted.length; i++) sorted[i] = samples.get(i);
+        Arrays.sort(sorted);
+        summary.put("p50", percentile(sorted, 50));
+        summary.put("p95", percentile(sorted, 95));
+        summary.put("max", sorted[sorted.length - 1]);
+        return summary;
+    }
+
+    /**
+     * Immutable summary of a finished task's timeline.
+     */
+    static class Timeline {
+        // Epoch ms.
+        final long firedAt;
+        // dispatched -> finished (ms), or -1 if never dispatched.
+        final long duration;
+        final boolean headless;
+        final boolean timeout;
+
+        Timeline(long firedAt, long duration, boolean headless, boolean timeout) {
+            this.firedAt = firedAt;
+            this.duration = duration;
+            this.headless = headless;
+            this.timeout = timeout;
+        }
+    }
+
+    // Nearest-rank percentile.
+    private static long percentile(long[] sorted, int p) {
+        int rank = (int) Math.ceil((p / 100.0) * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
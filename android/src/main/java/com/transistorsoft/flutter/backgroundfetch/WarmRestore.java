@@ -0,0 +1,75 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import android.content.Context;
+import android.os.Looper;
+import android.util.Log;
+
+import com.transistorsoft.tsbackgroundfetch.BackgroundFetch;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.flutter.FlutterInjector;
+import io.flutter.embedding.engine.loader.ApplicationInfoLoader;
+import io.flutter.embedding.engine.loader.FlutterApplicationInfo;
+
+/**
+ * Restores the state the first headless task of a process needs, in parallel and off the main-thread, rather than
+ * serially on the task's critical-path:  the persisted headless state (callback ids, scheduler options, task
+ * extras), the {@link FlutterApplicationInfo} and, optionally, the Flutter native library and assets (via
+ * FlutterLoader#startInitialization).
+ *
+ * Started explicitly from Application#onCreate (ie: at process start, including after boot) by
+ * BackgroundFetchPlugin#warmRestore.  Independently, a cold HeadlessTask prefetches the FlutterApplicationInfo
+ * while its state is read.
+ */
+class WarmRestore {
+    private static final AtomicBoolean sStarted = new AtomicBoolean(false);
+    private static volatile FlutterApplicationInfo sApplicationInfo;
+
+    static void start(Context context, boolean preloadFlutter) {
+        if (!sStarted.compareAndSet(false, true)) return;
+        final Context appContext = context.getApplicationContext();
+
+        BackgroundFetch.getThreadPool().execute(() -> HeadlessTask.loadState(appContext));
+        prefetchApplicationInfo(appContext);
+
+        if (preloadFlutter) {
+            // Loads libflutter and extracts assets on Flutter's own background thread.  Must be started on the main-thread.
+            Runnable preload = () -> FlutterInjector.instance().flutterLoader().startInitialization(appContext);
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                preload.run();
+            } else {
+                BackgroundFetch.getUiHandler().post(preload);
+            }
+        }
+        Log.d(BackgroundFetch.TAG, "[WarmRestore] started (preloadFlutter: " + preloadFlutter + ")");
+    }
+
+    static boolean isStarted() {
+        return sStarted.get();
+    }
+
+    /**
+     * Load the FlutterApplicationInfo on the thread-pool, unless already loaded.
+     */
+    static void prefetchApplicationInfo(Context context) {
+        if (sApplicationInfo != null) return;
+        BackgroundFetch.getThreadPool().execute(() -> getApplicationInfo(context));
+    }
+
+    /**
+     * Returns the FlutterApplicationInfo, waiting for a prefetch in progress rather than repeating it.
+     */
+    static FlutterApplicationInfo getApplicationInfo(Context context) {
+        FlutterApplicationInfo info = sApplicationInfo;
+        if (info == null) {
+            synchronized (WarmRestore.class) {
+                if (sApplicationInfo == null) {
+                    sApplicationInfo = ApplicationInfoLoader.load(context);
+                }
+                info = sApplicationInfo;
+            }
+        }
+        return info;
+    }
+}
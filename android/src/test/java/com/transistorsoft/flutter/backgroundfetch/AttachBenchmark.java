@@ -0,0 +1,157 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.transistorsoft.tsbackgroundfetch.BackgroundFetch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.MockedStatic;
+import org.robolectric.RobolectricTestRunner;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Cost of engine-attach (BackgroundFetchModule#onAttachedToEngine), eager vs deferred initialization of the native
+ * BackgroundFetch singleton:
+ * - attach.first.*:  the first attach in a process, against a freshly reset singleton, which eager initialization
+ *   constructs on the critical-path.
+ * - attach.*:  attach + detach once the singleton exists, as paid by every later add-to-app / headless engine.
+ * Results:  build/benchmarks/AttachBenchmark.json.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AttachBenchmark {
+    private static final String SUITE = "AttachBenchmark";
+
+    private Context mContext;
+    private BackgroundFetchModule mModule;
+    private FakeBinaryMessenger mMessenger;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mModule = BackgroundFetchModule.getInstance();
+        mMessenger = new FakeBinaryMessenger();
+    }
+
+    @After
+    public void tearDown() {
+        mModule.onDetachedFromEngine(mMessenger);
+        BackgroundFetchModule.setDeferredInitialization(false);
+        idleMainLooper();
+    }
+
+    @Test
+    public void firstAttachEager() throws Exception {
+        BackgroundFetchModule.setDeferredInitialization(false);
+        Benchmark.runCold(SUITE, "attach.first.eager", this::freshProcess, this::attach);
+    }
+
+    @Test
+    public void firstAttachDeferred() throws Exception {
+        BackgroundFetchModule.setDeferredInitialization(true);
+        Benchmark.runCold(SUITE, "attach.first.deferred", this::freshProcess, this::attach);
+    }
+
+    @Test
+    public void attachEager() throws Exception {
+        BackgroundFetchModule.setDeferredInitialization(false);
+        Benchmark.run(SUITE, "attach.eager", this::attachDetach);
+    }
+
+    @Test
+    public void attachDeferred() throws Exception {
+        BackgroundFetchModule.setDeferredInitialization(true);
+        Benchmark.run(SUITE, "attach.deferred", this::attachDetach);
+        // Drain the idle-handlers the attaches queued.
+        idleMainLooper();
+    }
+
+    @Test
+    public void deferredAttachInitializesWhenIdle() {
+        BackgroundFetchModule.setDeferredInitialization(true);
+        try (MockedStatic<BackgroundFetch> backgroundFetch = mockStatic(BackgroundFetch.class, CALLS_REAL_METHODS)) {
+            mModule.onAttachedToEngine(mContext, mMessenger);
+            assertTrue(mMessenger.hasHandler(BackgroundFetchModule.PLUGIN_ID + "/methods"));
+            backgroundFetch.verify(() -> BackgroundFetch.getInstance(any()), never());
+
+            idleMainLooper();
+            backgroundFetch.verify(() -> BackgroundFetch.getInstance(any()), atLeastOnce());
+        } finally {
+            mModule.onDetachedFromEngine(mMessenger);
+        }
+    }
+
+    @Test
+    public void deferredMethodCallConstructsSingletonOnMainThread() throws Exception {
+        BackgroundFetchModule.setDeferredInitialization(true);
+        freshProcess();
+        ExecutorService taskQueue = Executors.newSingleThreadExecutor();
+        try {
+            // As Dart's first #configure on the /methods TaskQueue, before the main-thread has gone idle.
+            Future<BackgroundFetch> adapter = taskQueue.submit(() -> BackgroundFetchModule.getAdapter(mContext));
+            Thread.sleep(100);
+            assertFalse("constructed off the main-thread", adapter.isDone());
+
+            while (!adapter.isDone()) {
+                shadowOf(Looper.getMainLooper()).idle();
+            }
+            assertSame(BackgroundFetch.getInstance(mContext), adapter.get(5, TimeUnit.SECONDS));
+        } finally {
+            taskQueue.shutdownNow();
+        }
+    }
+
+    // A fresh process:  no engine attached, no pending idle-handlers and no native singleton.
+    private Object freshProcess() throws IllegalAccessException {
+        mModule.onDetachedFromEngine(mMessenger);
+        idleMainLooper();
+        // Whatever the native library names its instance field.
+        for (Field field : BackgroundFetch.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == BackgroundFetch.class) {
+                field.setAccessible(true);
+                field.set(null, null);
+            }
+        }
+        BackgroundFetchModule.resetAdapterInitialized();
+        return mMessenger;
+    }
+
+    private Object attach() {
+        mModule.onAttachedToEngine(mContext, mMessenger);
+        return mMessenger;
+    }
+
+    // The paused main Looper only runs its IdleHandlers once it has processed a message and gone idle.
+    private static void idleMainLooper() {
+        new Handler(Looper.getMainLooper()).post(() -> {});
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private Object attachDetach() {
+        mModule.onAttachedToEngine(mContext, mMessenger);
+        mModule.onDetachedFromEngine(mMessenger);
+        return mMessenger;
+    }
+}
@@ -0,0 +1,144 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal JVM micro-benchmark harness.  Each benchmark is warmed-up, then timed over SAMPLES batches of BATCH_SIZE
+ * operations;  per-operation times (ns) are summarized as mean / p50 / p99 / max.
+ *
+ * Results of a suite are written as JSON to ${benchmark.outputDir}/<suite>.json (build/benchmarks when run by
+ * Gradle) and printed, so regressions can be tracked over time:
+ *
+ *   {"suite": "HotPathBenchmark", "results": [{"name": "buildConfig", "unit": "ns/op", "ops": 20000, "mean": 412.3, ...}]}
+ *
+ * Wall-clock assertions only run with -Dbenchmark.assert=true (Gradle:  -Pbenchmark.assert=true);  by default,
+ * results are recorded but never fail the test run.
+ */
+final class Benchmark {
+    private static final int WARMUP_OPS = Integer.getInteger("benchmark.warmupOps", 5000);
+    private static final int SAMPLES = Integer.getInteger("benchmark.samples", 50);
+    private static final int BATCH_SIZE = Integer.getInteger("benchmark.batchSize", 200);
+    private static final int COLD_SAMPLES = Integer.getInteger("benchmark.coldSamples", 200);
+    static final boolean ASSERT_TIMINGS = Boolean.getBoolean("benchmark.assert");
+
+    // Suite -> results, in the order run.
+    private static final Map<String, Map<String, Result>> sSuites = new LinkedHashMap<>();
+
+    // Consumes each operation's return value, so the JIT can't eliminate the work.
+    private static volatile int sBlackhole;
+
+    interface Op {
+        Object run() throws Exception;
+    }
+
+    static final class Result {
+        final String name;
+        final long ops;
+        final double mean;
+        final double p50;
+        final double p99;
+        final double max;
+
+        Result(String name, long ops, double[] perOp) {
+            this.name = name;
+            this.ops = ops;
+            Arrays.sort(perOp);
+            double total = 0;
+            for (double sample : perOp) total += sample;
+            this.mean = total / perOp.length;
+            this.p50 = perOp[(int) Math.floor(0.50 * (perOp.length - 1))];
+            this.p99 = perOp[(int) Math.floor(0.99 * (perOp.length - 1))];
+            this.max = perOp[perOp.length - 1];
+        }
+
+        String toJson() {
+            return String.format(Locale.US, "{\"name\": \"%s\", \"unit\": \"ns/op\", \"ops\": %d, \"mean\": %.1f, \"p50\": %.1f, \"p99\": %.1f, \"max\": %.1f}", name, ops, mean, p50, p99, max);
+        }
+    }
+
+    private Benchmark() {}
+
+    /**
+     * Time op and record the result under suite.
+     */
+    static Result run(String suite, String name, Op op) throws Exception {
+        int hash = 0;
+        for (int i = 0; i < WARMUP_OPS; i++) {
+            hash += System.identityHashCode(op.run());
+        }
+        double[] perOp = new double[SAMPLES];
+        for (int sample = 0; sample < SAMPLES; sample++) {
+            long startedAt = System.nanoTime();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                hash += System.identityHashCode(op.run());
+            }
+            perOp[sample] = (double) (System.nanoTime() - startedAt) / BATCH_SIZE;
+        }
+        sBlackhole = hash;
+
+        Result result = new Result(name, (long) SAMPLES * BATCH_SIZE, perOp);
+        record(suite, result);
+        return result;
+    }
+
+    /**
+     * Time a one-time operation (eg: the first of something in a process):  each of COLD_SAMPLES samples runs reset,
+     * untimed, then op once.  No warm-up:  the first sample includes class-loading, as a process's first op does.
+     */
+    static Result runCold(String suite, String name, Op reset, Op op) throws Exception {
+        int hash = 0;
+        double[] perOp = new double[COLD_SAMPLES];
+        for (int sample = 0; sample < COLD_SAMPLES; sample++) {
+            hash += System.identityHashCode(reset.run());
+            long startedAt = System.nanoTime();
+            hash += System.identityHashCode(op.run());
+            perOp[sample] = (double) (System.nanoTime() - startedAt);
+        }
+        sBlackhole = hash;
+
+        Result result = new Result(name, COLD_SAMPLES, perOp);
+        record(suite, result);
+        return result;
+    }
+
+    private static synchronized void record(String suite, Result result) throws IOException {
+        Map<String, Result> results = sSuites.get(suite);
+        if (results == null) {
+            results = new LinkedHashMap<>();
+            sSuites.put(suite, results);
+        }
+        results.put(result.name, result);
+
+        StringBuilder json = new StringBuilder("{\"suite\": \"").append(suite).append("\", \"results\": [");
+        String separator = "";
+        for (Result each : results.values()) {
+            json.append(separator).append(each.toJson());
+            separator = ", ";
+        }
+        json.append("]}");
+        System.out.println("[Benchmark] " + suite + " " + result.toJson());
+
+        // Rewritten after each benchmark, so the file is complete whichever of the suite's tests ran.
+        write(suite, json.toString());
+    }
+
+    /**
+     * Write a suite's JSON document to ${benchmark.outputDir}/<suite>.json.  For suites reporting something other
+     * than ns/op (eg: a soak's throughput).
+     */
+    static synchronized void write(String suite, String json) throws IOException {
+        File dir = new File(System.getProperty("benchmark.outputDir", "build/benchmarks"));
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Failed to create " + dir);
+        try (Writer writer = new FileWriter(new File(dir, suite + ".json"))) {
+            writer.write(json);
+            writer.write('\n');
+        }
+    }
+}
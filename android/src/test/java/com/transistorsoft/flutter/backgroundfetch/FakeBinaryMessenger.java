@@ -0,0 +1,130 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.StandardMethodCodec;
+
+/**
+ * In-memory stand-in for an engine's BinaryMessenger.  Messages the plugin sends are counted per channel (and the
+ * last one kept);  "Dart" may invoke handlers the plugin registered with #invokeMethod.  Background TaskQueues run
+ * their handlers synchronously on the calling thread.
+ */
+class FakeBinaryMessenger implements BinaryMessenger {
+    /**
+     * Answers method invocations the plugin sends to "Dart".  Returning null leaves the invocation unanswered.
+     */
+    interface Responder {
+        @Nullable ByteBuffer respond(String channel, MethodCall call);
+    }
+
+    private final Map<String, BinaryMessageHandler> mHandlers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> mSent = new ConcurrentHashMap<>();
+    private final Map<String, ByteBuffer> mLastSent = new ConcurrentHashMap<>();
+    private volatile Responder mResponder;
+
+    void setResponder(Responder responder) {
+        mResponder = responder;
+    }
+
+    @NonNull
+    @Override
+    public TaskQueue makeBackgroundTaskQueue(@NonNull TaskQueueOptions options) {
+        return new TaskQueue() {};
+    }
+
+    @Override
+    public void send(@NonNull String channel, @Nullable ByteBuffer message) {
+        send(channel, message, null);
+    }
+
+    @Override
+    public void send(@NonNull String channel, @Nullable ByteBuffer message, @Nullable BinaryReply callback) {
+        mSent.computeIfAbsent(channel, key -> new AtomicLong()).incrementAndGet();
+        if (message != null) mLastSent.put(channel, message);
+        Responder responder = mResponder;
+        if (callback == null || responder == null || message == null) return;
+        ByteBuffer reply = responder.respond(channel, StandardMethodCodec.INSTANCE.decodeMethodCall(rewound(message)));
+        if (reply != null) callback.reply(rewound(reply));
+    }
+
+    @Override
+    public void setMessageHandler(@NonNull String channel, @Nullable BinaryMessageHandler handler) {
+        if (handler == null) {
+            mHandlers.remove(channel);
+        } else {
+            mHandlers.put(channel, handler);
+        }
+    }
+
+    @Override
+    public void setMessageHandler(@NonNull String channel, @Nullable BinaryMessageHandler handler, @Nullable TaskQueue taskQueue) {
+        setMessageHandler(channel, handler);
+    }
+
+    boolean hasHandler(String channel) {
+        return mHandlers.containsKey(channel);
+    }
+
+    int getHandlerCount() {
+        return mHandlers.size();
+    }
+
+    long getSentCount(String channel) {
+        AtomicLong count = mSent.get(channel);
+        return (count != null) ? count.get() : 0;
+    }
+
+    /**
+     * @return the last event sent on an EventChannel, decoded.
+     */
+    @Nullable
+    Object getLastEvent(String channel) {
+        ByteBuffer message = mLastSent.get(channel);
+        return (message != null) ? StandardMethodCodec.INSTANCE.decodeEnvelope(rewound(message)) : null;
+    }
+
+    /**
+     * @return the last method invocation sent on channel, decoded.
+     */
+    @Nullable
+    MethodCall getLastMethodCall(String channel) {
+        ByteBuffer message = mLastSent.get(channel);
+        return (message != null) ? StandardMethodCodec.INSTANCE.decodeMethodCall(rewound(message)) : null;
+    }
+
+    /**
+     * Invoke the plugin's handler on channel as Dart would.
+     * @return the decoded result, or null when the handler is missing, not implemented or hasn't replied.
+     * @throws io.flutter.plugin.common.FlutterException when the handler replied with an error.
+     */
+    @Nullable
+    Object invokeMethod(String channel, String method, @Nullable Object arguments) {
+        BinaryMessageHandler handler = mHandlers.get(channel);
+        if (handler == null) return null;
+        AtomicReference<ByteBuffer> reply = new AtomicReference<>();
+        handler.onMessage(rewound(StandardMethodCodec.INSTANCE.encodeMethodCall(new MethodCall(method, arguments))), reply::set);
+        ByteBuffer envelope = reply.get();
+        return (envelope != null) ? StandardMethodCodec.INSTANCE.decodeEnvelope(rewound(envelope)) : null;
+    }
+
+    /**
+     * Codecs return their buffer positioned after the encoded bytes;  the engine hands receivers a buffer positioned
+     * at the start.
+     */
+    static ByteBuffer rewound(ByteBuffer encoded) {
+        ByteBuffer buffer = encoded.duplicate();
+        int size = (buffer.position() > 0) ? buffer.position() : buffer.limit();
+        buffer.position(0);
+        buffer.limit(size);
+        return buffer.slice();
+    }
+}
@@ -0,0 +1,113 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.JSONMethodCodec;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodCodec;
+import io.flutter.plugin.common.StandardMethodCodec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Codec cost of a headless dispatch on the /headless channel:  encoding the payload, and decoding it as the receiving
+ * isolate does.  StandardMethodCodec with typed fields (current) vs the JSONMethodCodec / org.json path it
+ * replaced.  Results:  build/benchmarks/HeadlessCodecBenchmark.json.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class HeadlessCodecBenchmark {
+    private static final String SUITE = "HeadlessCodecBenchmark";
+    private static final String TASK_ID = "com.transistorsoft.benchmark";
+    private static final long CALLBACK_ID = 1234567890123L;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+    }
+
+    @Test
+    public void single() throws Exception {
+        compare("single", 1);
+    }
+
+    @Test
+    public void batch4() throws Exception {
+        compare("batch4", 4);
+    }
+
+    @Test
+    public void roundTripsTypedFields() {
+        Map<?, ?> payload = (Map<?, ?>) roundTrip(StandardMethodCodec.INSTANCE, "", standardPayload(1)).arguments;
+        Map<?, ?> task = (Map<?, ?>) payload.get("task");
+        // Longs survive as longs, booleans as booleans:  no text in between.
+        assertEquals(CALLBACK_ID, payload.get("callbackId"));
+        assertEquals(TASK_ID, task.get("taskId"));
+        assertEquals(Boolean.FALSE, task.get("timeout"));
+    }
+
+    private void compare(String name, int batchSize) throws Exception {
+        String method = (batchSize == 1) ? "" : "batch";
+        // The same fields either way, built outside the timed region:  these time the codecs.
+        Map<String, Object> standardPayload = standardPayload(batchSize);
+        JSONObject jsonPayload = jsonPayload(batchSize);
+        Benchmark.Result standard = Benchmark.run(SUITE, name + ".standard", () -> roundTrip(StandardMethodCodec.INSTANCE, method, standardPayload));
+        Benchmark.Result json = Benchmark.run(SUITE, name + ".json", () -> roundTrip(JSONMethodCodec.INSTANCE, method, jsonPayload));
+        if (Benchmark.ASSERT_TIMINGS) {
+            assertTrue("standard p50 " + standard.p50 + "ns vs json p50 " + json.p50 + "ns", standard.p50 < json.p50);
+        }
+    }
+
+    private static MethodCall roundTrip(MethodCodec codec, String method, Object payload) {
+        return codec.decodeMethodCall(FakeBinaryMessenger.rewound(codec.encodeMethodCall(new MethodCall(method, payload))));
+    }
+
+    // As HeadlessTask#flushDispatchBatch builds it.
+    private Map<String, Object> standardPayload(int batchSize) {
+        List<Map<String, Object>> events = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            events.add(HeadlessTask.toEvent(mContext, i, TASK_ID, false));
+        }
+        return HeadlessTask.buildPayload(CALLBACK_ID, events);
+    }
+
+    // As the JSONMethodCodec dispatch built it, from BGTask#toJson.
+    private static JSONObject jsonPayload(int batchSize) throws JSONException {
+        JSONObject payload = new JSONObject();
+        payload.put("callbackId", CALLBACK_ID);
+        if (batchSize == 1) {
+            payload.put("task", jsonEvent(0));
+        } else {
+            JSONArray tasks = new JSONArray();
+            for (int i = 0; i < batchSize; i++) {
+                tasks.put(jsonEvent(i));
+            }
+            payload.put("tasks", tasks);
+        }
+        return payload;
+    }
+
+    private static JSONObject jsonEvent(long deliveryId) throws JSONException {
+        JSONObject event = new JSONObject();
+        event.put("deliveryId", deliveryId);
+        event.put("taskId", TASK_ID);
+        event.put("timeout", false);
+        return event;
+    }
+}
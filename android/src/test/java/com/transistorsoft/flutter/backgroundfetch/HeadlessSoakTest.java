@@ -0,0 +1,319 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.transistorsoft.tsbackgroundfetch.BGTask;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.embedding.engine.dart.DartExecutor;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.StandardMethodCodec;
+import io.flutter.view.FlutterCallbackInformation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Soak of the plugin's engine lifecycle.  Each cycle, as when the OS wakes a terminated app and the user then
+ * re-opens it:
+ *   - headless tasks fire with no Activity:  a headless engine boots, Dart initializes, receives and finishes them;
+ *   - the main engine and its Activity attach (evicting the headless engine), receive and finish fetch events, then
+ *     go away.
+ * Engines are fakes (libflutter can't load on the JVM) routing their channels to FakeBinaryMessengers, with the
+ * Dart side played by this test.  After the soak, nothing may be dropped and nothing retained:  the per-engine
+ * registries, onInitialized listeners, the background engine and every engine created must all be gone.
+ * Throughput, retained heap, dropped-event counts and engine create / destroy churn:
+ * build/benchmarks/HeadlessSoakTest.json.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class HeadlessSoakTest {
+    private static final String SUITE = "HeadlessSoakTest";
+    private static final String METHOD_CHANNEL = BackgroundFetchModule.PLUGIN_ID + "/methods";
+    private static final String EVENT_CHANNEL = BackgroundFetchModule.PLUGIN_ID + "/events";
+    private static final String HEADLESS_CHANNEL = BackgroundFetchModule.PLUGIN_ID + "/headless";
+    private static final int WARMUP_CYCLES = 5;
+    private static final int CYCLES = Integer.getInteger("soak.cycles", 50);
+    private static final int TASKS_PER_CYCLE = 5;
+
+    private Context mContext;
+    private BackgroundFetchModule mModule;
+    private ShadowLooper mMainLooper;
+    private Handler mMainHandler;
+    private Activity mActivity;
+    private FakeEngineFactory mEngines;
+
+    // taskIds Dart received, via either path.
+    private final Set<String> mReceived = new HashSet<>();
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mModule = BackgroundFetchModule.getInstance();
+        mMainLooper = shadowOf(Looper.getMainLooper());
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mActivity = Robolectric.buildActivity(Activity.class).setup().get();
+        mEngines = new FakeEngineFactory();
+        HeadlessEngineManager.setEngineFactory(mEngines);
+
+        // BackgroundFetch.registerHeadlessTask(callback), then the persisted state warmed as by WarmRestore.
+        HeadlessTask.register(mContext, Arrays.asList(1L, 2L));
+        HeadlessTask.loadState(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        HeadlessEngineManager.evict("test finished");
+        HeadlessEngineManager.setEngineFactory(null);
+    }
+
+    @Test
+    public void soak() throws Exception {
+        for (int cycle = 0; cycle < WARMUP_CYCLES; cycle++) {
+            cycle("warmup-" + cycle);
+        }
+        Map<String, Object> lifecycle = mModule.getLifecycleStats();
+        Map<String, Object> dispatch = HeadlessTask.getDispatchStats();
+        Map<String, Object> engine = HeadlessEngineManager.getStats();
+        long droppedEvents = mModule.getFetchCallback().getDroppedEvents();
+        int enginesBefore = mEngines.created.size();
+        long heapBefore = usedHeap();
+        mReceived.clear();
+
+        long startedAt = System.nanoTime();
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            cycle("soak-" + cycle);
+        }
+        long elapsedMs = (System.nanoTime() - startedAt) / 1000000;
+
+        // Every task reached Dart;  nothing was dropped or failed.
+        assertEquals(CYCLES * TASKS_PER_CYCLE * 2, mReceived.size());
+        assertEquals(droppedEvents, mModule.getFetchCallback().getDroppedEvents());
+        Map<String, Object> dispatchAfter = HeadlessTask.getDispatchStats();
+        assertEquals(dispatch.get("dropped"), dispatchAfter.get("dropped"));
+        assertEquals(dispatch.get("expired"), dispatchAfter.get("expired"));
+        assertEquals(0, dispatchAfter.get("size"));
+        Map<?, ?> delivery = (Map<?, ?>) dispatchAfter.get("ackLatencyUs");
+        assertEquals(((Map<?, ?>) dispatch.get("ackLatencyUs")).get("failed"), delivery.get("failed"));
+
+        // A headless engine per cycle, each evicted by the main engine's return;  all tasks finished.
+        Map<String, Object> engineAfter = HeadlessEngineManager.getStats();
+        assertEquals((long) engine.get("created") + CYCLES, engineAfter.get("created"));
+        assertEquals((long) engine.get("evictions") + CYCLES, engineAfter.get("evictions"));
+        assertEquals(0, engineAfter.get("inFlight"));
+        assertEquals(0, HeadlessScheduler.getStats().get("inFlight"));
+        assertEquals(0, HeadlessScheduler.getStats().get("queued"));
+
+        // Nothing retained:  registries back where they started, no listeners waiting on an engine, no engine.
+        Map<String, Object> lifecycleAfter = mModule.getLifecycleStats();
+        for (String registry : new String[] {"methodChannels", "eventChannels", "eventSinks", "activityEngines"}) {
+            assertEquals(registry, lifecycle.get(registry), lifecycleAfter.get(registry));
+        }
+        assertEquals((long) lifecycle.get("engineAttaches") + 2L * CYCLES, lifecycleAfter.get("engineAttaches"));
+        assertEquals((long) lifecycle.get("engineDetaches") + 2L * CYCLES, lifecycleAfter.get("engineDetaches"));
+        assertEquals(0, dispatchAfter.get("onInitializedListeners"));
+        assertFalse(HeadlessTask.isBackgroundIsolateRunning());
+        List<WeakReference<FlutterEngine>> soaked = mEngines.created.subList(enginesBefore, mEngines.created.size());
+        assertNull("Engine retained after eviction", firstRetained(soaked));
+
+        long retainedKb = (usedHeap() - heapBefore) / 1024;
+        int tasks = CYCLES * TASKS_PER_CYCLE * 2;
+        String json = String.format(Locale.US, "{\"suite\": \"%s\", \"cycles\": %d, \"tasks\": %d, \"durationMs\": %d, \"tasksPerSec\": %.1f, \"retainedHeapKb\": %d, "
+                        + "\"dropped\": {\"fetchEvents\": %d, \"headlessPending\": %d, \"headlessExpired\": %d, \"deliveryFailed\": %d}, "
+                        + "\"engines\": {\"created\": %d, \"destroyed\": %d, \"attaches\": %d, \"detaches\": %d}}",
+                SUITE, CYCLES, tasks, elapsedMs, tasks * 1000.0 / Math.max(1, elapsedMs), retainedKb,
+                mModule.getFetchCallback().getDroppedEvents() - droppedEvents,
+                delta(dispatchAfter, dispatch, "dropped"),
+                delta(dispatchAfter, dispatch, "expired"),
+                delta(delivery, (Map<?, ?>) dispatch.get("ackLatencyUs"), "failed"),
+                delta(engineAfter, engine, "created"),
+                delta(engineAfter, engine, "evictions"),
+                delta(lifecycleAfter, lifecycle, "engineAttaches"),
+                delta(lifecycleAfter, lifecycle, "engineDetaches"));
+        System.out.println("[Benchmark] " + json);
+        Benchmark.write(SUITE, json);
+    }
+
+    private void cycle(String name) {
+        // The OS fires tasks with no Activity:  a headless engine boots to run them.
+        AtomicBoolean initialized = new AtomicBoolean(false);
+        HeadlessTask.onInitialized(engine -> initialized.set(true));
+        for (int i = 0; i < TASKS_PER_CYCLE; i++) {
+            new HeadlessTask(mContext, task(name + "-headless-" + i));
+        }
+        settle();
+        assertTrue(initialized.get());
+        assertTrue(HeadlessTask.isBackgroundIsolateRunning());
+
+        // The user opens the app:  the main engine and Activity attach, evicting the headless engine.
+        FakeBinaryMessenger main = new FakeBinaryMessenger();
+        mModule.onAttachedToEngine(mContext, main);
+        mModule.setActivity(mActivity, main);
+        assertFalse(HeadlessTask.isBackgroundIsolateRunning());
+        main.invokeMethod(EVENT_CHANNEL, "listen", null);
+        for (int i = 0; i < TASKS_PER_CYCLE; i++) {
+            String taskId = name + "-fetch-" + i;
+            mModule.getFetchCallback().onFetch(taskId);
+            Map<?, ?> event = (Map<?, ?>) main.getLastEvent(EVENT_CHANNEL);
+            mReceived.add((String) event.get("taskId"));
+            main.invokeMethod(METHOD_CHANNEL, "finish", taskId);
+        }
+        settle();
+
+        // ...and leaves.
+        mModule.setActivity(null, main);
+        mModule.onDetachedFromEngine(main);
+        settle();
+    }
+
+    private static long delta(Map<?, ?> after, Map<?, ?> before, String key) {
+        return ((Number) after.get(key)).longValue() - ((Number) before.get(key)).longValue();
+    }
+
+    // Run the main Looper through the dispatch coalesce-window, acks and finishes.
+    private void settle() {
+        for (int i = 0; i < 10; i++) {
+            mMainLooper.idleFor(Duration.ofMillis(50));
+        }
+    }
+
+    private static BGTask task(String taskId) {
+        BGTask task = mock(BGTask.class);
+        when(task.getTaskId()).thenReturn(taskId);
+        when(task.getTimedOut()).thenReturn(false);
+        return task;
+    }
+
+    @Nullable
+    private static FlutterEngine firstRetained(List<WeakReference<FlutterEngine>> engines) throws InterruptedException {
+        for (int attempt = 0; attempt < 10; attempt++) {
+            System.gc();
+            Thread.sleep(50);
+            FlutterEngine retained = null;
+            for (WeakReference<FlutterEngine> engine : engines) {
+                if (engine.get() != null) retained = engine.get();
+            }
+            if (retained == null) return null;
+        }
+        for (WeakReference<FlutterEngine> engine : engines) {
+            if (engine.get() != null) return engine.get();
+        }
+        return null;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Creates fake headless engines:  the engine and its DartExecutor are mocks routing to a FakeBinaryMessenger.
+     * Plays each engine's Dart isolate:  signals "initialized" once booted, acks each dispatch and finishes its tasks.
+     */
+    private class FakeEngineFactory implements HeadlessEngineManager.EngineFactory {
+        final List<WeakReference<FlutterEngine>> created = new ArrayList<>();
+        private final FlutterCallbackInformation mCallbackInfo = mock(FlutterCallbackInformation.class);
+
+        @Override
+        public FlutterEngine createEngine(Context context, DartExecutor.DartEntrypoint entrypoint) {
+            FakeBinaryMessenger messenger = new FakeBinaryMessenger();
+            messenger.setResponder((channel, call) -> HEADLESS_CHANNEL.equals(channel) ? receive(messenger, call) : null);
+            DartExecutor executor = mock(DartExecutor.class, invocation -> onExecutor(messenger, invocation));
+            FlutterEngine engine = mock(FlutterEngine.class, invocation -> onEngine(messenger, executor, invocation));
+            created.add(new WeakReference<>(engine));
+            // As the engine's GeneratedPluginRegistrant does.
+            mModule.onAttachedToEngine(context, messenger);
+            return engine;
+        }
+
+        @Override
+        public FlutterCallbackInformation lookupCallbackInformation(long handle) {
+            return mCallbackInfo;
+        }
+
+        private Object onEngine(FakeBinaryMessenger messenger, DartExecutor executor, InvocationOnMock invocation) throws Throwable {
+            switch (invocation.getMethod().getName()) {
+                case "getDartExecutor":
+                    return executor;
+                case "destroy":
+                    mModule.onDetachedFromEngine(messenger);
+                    return null;
+                default:
+                    return RETURNS_DEFAULTS.answer(invocation);
+            }
+        }
+
+        private Object onExecutor(FakeBinaryMessenger messenger, InvocationOnMock invocation) throws Throwable {
+            Object[] args = invocation.getArguments();
+            switch (invocation.getMethod().getName()) {
+                case "send":
+                    messenger.send((String) args[0], (ByteBuffer) args[1], (args.length > 2) ? (BinaryMessenger.BinaryReply) args[2] : null);
+                    return null;
+                case "setMessageHandler":
+                    messenger.setMessageHandler((String) args[0], (BinaryMessenger.BinaryMessageHandler) args[1]);
+                    return null;
+                case "makeBackgroundTaskQueue":
+                    return messenger.makeBackgroundTaskQueue();
+                case "isExecutingDart":
+                    return false;
+                case "executeDartCallback":
+                case "executeDartEntrypoint":
+                    // The isolate boots, registers its handlers and tells the plugin it's ready.
+                    mMainHandler.post(() -> messenger.invokeMethod(HEADLESS_CHANNEL, "initialized", null));
+                    return null;
+                default:
+                    return RETURNS_DEFAULTS.answer(invocation);
+            }
+        }
+
+        // The headless dispatcher:  run each task (which finishes it) and ack the invocation.
+        private ByteBuffer receive(FakeBinaryMessenger messenger, MethodCall call) {
+            Map<?, ?> payload = (Map<?, ?>) call.arguments;
+            List<?> tasks = payload.containsKey("tasks") ? (List<?>) payload.get("tasks") : Collections.singletonList(payload.get("task"));
+            for (Object task : tasks) {
+                String taskId = (String) ((Map<?, ?>) task).get("taskId");
+                mReceived.add(taskId);
+                mMainHandler.post(() -> messenger.invokeMethod(METHOD_CHANNEL, "finish", taskId));
+            }
+            return StandardMethodCodec.INSTANCE.encodeSuccessEnvelope(true);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import android.app.Activity;
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.StandardMethodCodec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmarks of the plugin's per-wake native hot-paths, against a FakeBinaryMessenger standing in for the engine.
+ * Results:  build/benchmarks/HotPathBenchmark.json.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class HotPathBenchmark {
+    private static final String SUITE = "HotPathBenchmark";
+    private static final String METHOD_CHANNEL = BackgroundFetchModule.PLUGIN_ID + "/methods";
+    private static final String EVENT_CHANNEL = BackgroundFetchModule.PLUGIN_ID + "/events";
+    private static final String TASK_ID = "com.transistorsoft.benchmark";
+
+    private Context mContext;
+    private BackgroundFetchModule mModule;
+    private FakeBinaryMessenger mMessenger;
+    private Activity mActivity;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mModule = BackgroundFetchModule.getInstance();
+        mMessenger = new FakeBinaryMessenger();
+        mModule.onAttachedToEngine(mContext, mMessenger);
+    }
+
+    @After
+    public void tearDown() {
+        if (mActivity != null) mModule.setActivity(null, mMessenger);
+        mModule.onDetachedFromEngine(mMessenger);
+    }
+
+    @Test
+    public void onMethodCall() throws Exception {
+        // The per-wake call:  Dart finishing its task.  Includes decoding the call and encoding the reply.
+        Benchmark.Result result = Benchmark.run(SUITE, "onMethodCall.finish", () -> mMessenger.invokeMethod(METHOD_CHANNEL, "finish", TASK_ID));
+        assertTrue(result.ops > 0);
+    }
+
+    @Test
+    public void buildConfig() throws Exception {
+        Map<String, Object> params = new HashMap<>();
+        params.put("taskId", TASK_ID);
+        params.put("minimumFetchInterval", 15);
+        params.put("delay", 5000);
+        params.put("stopOnTerminate", false);
+        params.put("startOnBoot", true);
+        params.put("enableHeadless", true);
+        params.put("requiredNetworkType", 1);
+        params.put("requiresBatteryNotLow", false);
+        params.put("requiresCharging", false);
+        params.put("requiresDeviceIdle", false);
+        params.put("requiresStorageNotLow", false);
+        params.put("forceAlarmManager", false);
+        params.put("periodic", true);
+
+        Benchmark.run(SUITE, "buildConfig", () -> mModule.buildConfig(params));
+    }
+
+    @Test
+    public void fetchEvent() throws Exception {
+        listen();
+        BackgroundFetchModule.FetchStreamHandler callback = mModule.getFetchCallback();
+        long sentBefore = mMessenger.getSentCount(EVENT_CHANNEL);
+
+        Benchmark.Result fetch = Benchmark.run(SUITE, "fetchEvent.onFetch", () -> {
+            callback.onFetch(TASK_ID);
+            return callback;
+        });
+        Benchmark.Result timeout = Benchmark.run(SUITE, "fetchEvent.onTimeout", () -> {
+            callback.onTimeout(TASK_ID);
+            return callback;
+        });
+        // Every event reached the (fake) EventSink:  none were buffered or dropped.
+        assertTrue(mMessenger.getSentCount(EVENT_CHANNEL) - sentBefore >= fetch.ops + timeout.ops);
+        assertEquals(0, callback.getDroppedEvents());
+    }
+
+    @Test
+    public void headlessPayload() throws Exception {
+        // Build the payload of a dispatch and encode it for the channel, as HeadlessTask#flushDispatchBatch does.
+        Benchmark.run(SUITE, "headlessPayload.single", () -> encodePayload(1));
+        Benchmark.run(SUITE, "headlessPayload.batch4", () -> encodePayload(4));
+    }
+
+    private Object encodePayload(int batchSize) {
+        List<Map<String, Object>> events = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            events.add(HeadlessTask.toEvent(mContext, i, TASK_ID, false));
+        }
+        Map<String, Object> payload = HeadlessTask.buildPayload(1234567890123L, events);
+        return StandardMethodCodec.INSTANCE.encodeMethodCall(new MethodCall((batchSize == 1) ? "" : "batch", payload));
+    }
+
+    // Attach an Activity and subscribe to the engine's /events channel, as Dart's #configure does.
+    private void listen() {
+        mActivity = Robolectric.buildActivity(Activity.class).setup().get();
+        mModule.setActivity(mActivity, mMessenger);
+        mMessenger.invokeMethod(EVENT_CHANNEL, "listen", null);
+    }
+}
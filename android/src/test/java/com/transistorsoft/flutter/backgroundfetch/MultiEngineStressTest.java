@@ -0,0 +1,208 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import android.app.Activity;
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.flutter.plugin.common.StandardMethodCodec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Engines attach, listen, detach concurrently (as add-to-app hosts may, from several threads) while fetch events
+ * fan-out.  No event may be lost and, once the churn stops, the per-engine registries must hold only the engines
+ * still attached.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MultiEngineStressTest {
+    private static final String EVENT_CHANNEL = BackgroundFetchModule.PLUGIN_ID + "/events";
+    private static final int THREADS = 8;
+    private static final int CYCLES = 250;
+    private static final int EVENTS = 2000;
+
+    private Context mContext;
+    private BackgroundFetchModule mModule;
+    private BackgroundFetchModule.FetchStreamHandler mCallback;
+    private List<Activity> mActivities;
+    private Map<String, Object> mBaseline;
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mModule = BackgroundFetchModule.getInstance();
+        mCallback = mModule.getFetchCallback();
+        mCallback.setBufferCapacity(EVENTS);
+        // Activities must be built on the main-thread;  the module only tracks the engines attached to one.
+        mActivities = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            mActivities.add(Robolectric.buildActivity(Activity.class).setup().get());
+        }
+        // Fetch events only arrive once an engine has attached and configured.
+        FakeBinaryMessenger configured = new FakeBinaryMessenger();
+        mModule.onAttachedToEngine(mContext, configured);
+        mModule.onDetachedFromEngine(configured);
+        mBaseline = mModule.getLifecycleStats();
+        mExecutor = Executors.newFixedThreadPool(THREADS + 1);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+        mCallback.setBufferCapacity(16);
+    }
+
+    @Test
+    public void residentEngineReceivesEveryEventDuringChurn() throws Exception {
+        RecordingMessenger resident = new RecordingMessenger();
+        attachAndListen(resident, mActivities.get(0));
+        long droppedBefore = mCallback.getDroppedEvents();
+
+        Set<String> fired = churnWhileFiring("resident");
+
+        assertEquals(fired, resident.getTaskIds());
+        assertEquals(droppedBefore, mCallback.getDroppedEvents());
+        assertRegistries(1);
+
+        detach(resident, true);
+        assertRegistries(0);
+        assertEquals(0, resident.getHandlerCount());
+    }
+
+    @Test
+    public void eventsBufferedWhileNoEngineListensAreReplayed() throws Exception {
+        Set<String> received = ConcurrentHashMap.newKeySet();
+        long droppedBefore = mCallback.getDroppedEvents();
+
+        // Every engine which comes and goes during the churn records what it received;  a late engine receives
+        // whatever arrived while none was listening.
+        Set<String> fired = churnWhileFiring("buffered", received);
+        RecordingMessenger late = new RecordingMessenger(received);
+        attachAndListen(late, mActivities.get(0));
+
+        assertEquals(fired, received);
+        assertEquals(droppedBefore, mCallback.getDroppedEvents());
+        detach(late, true);
+        assertRegistries(0);
+    }
+
+    private Set<String> churnWhileFiring(String prefix) throws Exception {
+        return churnWhileFiring(prefix, null);
+    }
+
+    /**
+     * THREADS threads each run CYCLES engine attach / listen / detach cycles while another fires EVENTS fetch events.
+     * @return the taskIds fired.
+     */
+    private Set<String> churnWhileFiring(String prefix, @Nullable Set<String> received) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Activity activity = mActivities.get(t);
+            futures.add(mExecutor.submit(() -> {
+                start.await();
+                for (int i = 0; i < CYCLES; i++) {
+                    RecordingMessenger engine = (received != null) ? new RecordingMessenger(received) : new RecordingMessenger();
+                    attachAndListen(engine, activity);
+                    // Half go away with their Activity first;  the rest as an engine destroyed outright.
+                    detach(engine, (i % 2) == 0);
+                    // Detaching must leave nothing registered on the engine's messenger.
+                    assertEquals(0, engine.getHandlerCount());
+                }
+                return null;
+            }));
+        }
+        Set<String> fired = new HashSet<>();
+        for (int i = 0; i < EVENTS; i++) {
+            fired.add(prefix + "-" + i);
+        }
+        futures.add(mExecutor.submit(() -> {
+            start.await();
+            for (String taskId : fired) {
+                mCallback.onFetch(taskId);
+            }
+            return null;
+        }));
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            // Rethrows any failure or exception from the worker.
+            future.get(60, TimeUnit.SECONDS);
+        }
+        return fired;
+    }
+
+    private void attachAndListen(FakeBinaryMessenger engine, Activity activity) {
+        mModule.onAttachedToEngine(mContext, engine);
+        mModule.setActivity(activity, engine);
+        engine.invokeMethod(EVENT_CHANNEL, "listen", null);
+    }
+
+    private void detach(FakeBinaryMessenger engine, boolean detachActivity) {
+        if (detachActivity) mModule.setActivity(null, engine);
+        mModule.onDetachedFromEngine(engine);
+    }
+
+    private void assertRegistries(int attached) {
+        Map<String, Object> stats = mModule.getLifecycleStats();
+        for (String registry : new String[] {"methodChannels", "eventChannels", "eventSinks", "activityEngines"}) {
+            assertEquals(registry, (int) mBaseline.get(registry) + attached, stats.get(registry));
+        }
+        long attaches = (long) stats.get("engineAttaches") - (long) mBaseline.get("engineAttaches");
+        long detaches = (long) stats.get("engineDetaches") - (long) mBaseline.get("engineDetaches");
+        assertEquals(attached, attaches - detaches);
+        assertTrue(attaches >= (long) THREADS * CYCLES);
+    }
+
+    /**
+     * Records the taskId of each fetch event it receives on the /events channel.
+     */
+    private static class RecordingMessenger extends FakeBinaryMessenger {
+        private final Set<String> mTaskIds;
+
+        RecordingMessenger() {
+            this(ConcurrentHashMap.newKeySet());
+        }
+
+        RecordingMessenger(Set<String> taskIds) {
+            mTaskIds = taskIds;
+        }
+
+        @Override
+        public void send(@NonNull String channel, @Nullable ByteBuffer message, @Nullable BinaryReply callback) {
+            if (EVENT_CHANNEL.equals(channel) && message != null) {
+                Map<?, ?> event = (Map<?, ?>) StandardMethodCodec.INSTANCE.decodeEnvelope(rewound(message));
+                mTaskIds.add((String) event.get("taskId"));
+            }
+            super.send(channel, message, callback);
+        }
+
+        Set<String> getTaskIds() {
+            return mTaskIds;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Cost of appending a record to the memory-mapped journal, and its ring semantics.
+ * Results:  build/benchmarks/TaskJournalBenchmark.json.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TaskJournalBenchmark {
+    private static final String SUITE = "TaskJournalBenchmark";
+    // The ring's capacity (TaskJournal.CAPACITY).
+    private static final int CAPACITY = 512;
+    // An append is a handful of stores into the mapping:  it should never approach the cost of a file write.
+    private static final double MAX_APPEND_P50_NS = 100_000;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+    }
+
+    @Test
+    public void append() throws Exception {
+        TaskMetrics.Timeline timeline = new TaskMetrics.Timeline(System.currentTimeMillis(), 1250, true, false);
+        // Open the mapping outside the timed region.
+        TaskJournal.append(mContext, "com.transistorsoft.benchmark", timeline, TaskJournal.OUTCOME_NONE);
+
+        Benchmark.Result result = Benchmark.run(SUITE, "append", () -> {
+            TaskJournal.append(mContext, "com.transistorsoft.benchmark", timeline, 0);
+            return timeline;
+        });
+        if (Benchmark.ASSERT_TIMINGS) {
+            assertTrue("append p50 " + result.p50 + "ns", result.p50 < MAX_APPEND_P50_NS);
+        }
+    }
+
+    @Test
+    public void queryReturnsMostRecentRecordsOldestFirst() {
+        String taskId = "com.transistorsoft.ring";
+        long firedAt = System.currentTimeMillis();
+        int appended = CAPACITY + 10;
+        for (int i = 0; i < appended; i++) {
+            TaskJournal.append(mContext, taskId, new TaskMetrics.Timeline(firedAt + i, i, (i % 2) == 0, false), 0);
+        }
+
+        List<Object> records = TaskJournal.query(mContext, firedAt, null, taskId);
+        assertEquals(CAPACITY, records.size());
+        Map<?, ?> oldest = (Map<?, ?>) records.get(0);
+        Map<?, ?> newest = (Map<?, ?>) records.get(CAPACITY - 1);
+        assertEquals(firedAt + appended - CAPACITY, oldest.get("firedAt"));
+        assertEquals(firedAt + appended - 1, newest.get("firedAt"));
+        assertEquals(appended - 1, newest.get("duration"));
+        assertEquals(taskId, newest.get("taskId"));
+    }
+}
@@ -0,0 +1,113 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.flutter.FlutterInjector;
+import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.embedding.engine.FlutterEngineGroup;
+import io.flutter.embedding.engine.dart.DartExecutor;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PSS cost of starting the headless engine standalone vs spawned from a FlutterEngineGroup, alongside a running
+ * "main" engine as when a foreground-service keeps the process alive.  Results are reported as instrumentation
+ * status (key "benchmark") and logged, as JSON:
+ *
+ *   adb shell am instrument -w -e class com.transistorsoft.flutter.backgroundfetch.HeadlessEnginePssBenchmark \
+ *     com.transistorsoft.flutter.backgroundfetch.backgroundfetchexample.test/androidx.test.runner.AndroidJUnitRunner
+ */
+@RunWith(AndroidJUnit4.class)
+public class HeadlessEnginePssBenchmark {
+    private static final String TAG = "HeadlessEnginePss";
+    // Let the spawned isolate boot and the heap settle before sampling.
+    private static final long SETTLE_MS = 2000;
+
+    private Instrumentation mInstrumentation;
+    private Context mContext;
+    private FlutterEngineGroup mGroup;
+    private FlutterEngine mMainEngine;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mContext = mInstrumentation.getTargetContext().getApplicationContext();
+        mInstrumentation.runOnMainSync(() -> {
+            FlutterInjector.instance().flutterLoader().startInitialization(mContext);
+            FlutterInjector.instance().flutterLoader().ensureInitializationComplete(mContext, null);
+            mGroup = new FlutterEngineGroup(mContext);
+            mMainEngine = mGroup.createAndRunDefaultEngine(mContext);
+        });
+        SystemClock.sleep(SETTLE_MS);
+    }
+
+    @After
+    public void tearDown() {
+        mInstrumentation.runOnMainSync(() -> {
+            HeadlessEngineManager.setEngineGroup(null);
+            mMainEngine.destroy();
+        });
+    }
+
+    @Test
+    public void engineGroupSharesMemory() {
+        // Untimed first start:  maps libflutter and the snapshots, which both variants share afterwards.
+        measure(false);
+
+        long standalone = measure(false);
+        long spawned = measure(true);
+
+        String json = String.format(Locale.US, "{\"benchmark\":\"headlessEnginePss\",\"unit\":\"KB\",\"standalone\":%d,\"engineGroup\":%d}", standalone, spawned);
+        Log.i(TAG, json);
+        Bundle status = new Bundle();
+        status.putString("benchmark", json);
+        mInstrumentation.sendStatus(0, status);
+
+        assertTrue("Spawning from the engine group should cost less PSS: " + json, spawned < standalone);
+    }
+
+    /**
+     * @return the PSS growth (KB) across starting, and running, one headless engine.
+     */
+    private long measure(boolean fromGroup) {
+        AtomicReference<FlutterEngine> engine = new AtomicReference<>();
+        long before = sampleSettledPss();
+        mInstrumentation.runOnMainSync(() -> {
+            HeadlessEngineManager.setEngineGroup(fromGroup ? mGroup : null);
+            HeadlessEngineManager.setUseEngineGroup(mContext, fromGroup);
+            DartExecutor.DartEntrypoint entrypoint = DartExecutor.DartEntrypoint.createDefault();
+            engine.set(HeadlessEngineManager.createEngine(mContext, entrypoint));
+            if (!fromGroup) {
+                // A standalone engine is returned idle:  run it, as HeadlessTask does.
+                engine.get().getDartExecutor().executeDartEntrypoint(entrypoint);
+            }
+        });
+        SystemClock.sleep(SETTLE_MS);
+        long after = sampleSettledPss();
+        mInstrumentation.runOnMainSync(() -> engine.get().destroy());
+        SystemClock.sleep(SETTLE_MS);
+        return after - before;
+    }
+
+    private static long sampleSettledPss() {
+        Runtime.getRuntime().gc();
+        Runtime.getRuntime().runFinalization();
+        return Debug.getPss();
+    }
+}
@@ -0,0 +1,183 @@
+package com.transistorsoft.flutter.backgroundfetch;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.flutter.FlutterInjector;
+import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Main-thread time consumed by a typical app-startup sequence of /methods calls (configure + several scheduleTask),
+ * handled on the platform thread (as before the /methods channel had a TaskQueue) vs on a background thread, as the
+ * TaskQueue now handles them.  Each sequence runs against the real native BackgroundFetch (JobScheduler /
+ * AlarmManager, persistence).  Results are reported as instrumentation status (key "benchmark") and logged, as JSON:
+ *
+ *   adb shell am instrument -w -e class com.transistorsoft.flutter.backgroundfetch.MethodChannelStartupBenchmark \
+ *     com.transistorsoft.flutter.backgroundfetch.backgroundfetchexample.test/androidx.test.runner.AndroidJUnitRunner
+ *
+ * Each sequence is wrapped in a "startup.platformThread" / "startup.taskQueue" trace section, and the plugin's
+ * tracing (enableTracing) is on:  a Perfetto capture taken while it runs shows which thread each
+ * "BackgroundFetchModule.onMethodCall" section ran on.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MethodChannelStartupBenchmark {
+    private static final String TAG = "MethodChannelStartup";
+    private static final int ROUNDS = 10;
+    private static final int SCHEDULED_TASKS = 4;
+
+    private Instrumentation mInstrumentation;
+    private Context mContext;
+    private FlutterEngine mEngine;
+    private BackgroundFetchModule mModule;
+    private ExecutorService mTaskQueue;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mContext = mInstrumentation.getTargetContext().getApplicationContext();
+        mModule = BackgroundFetchModule.getInstance();
+        mInstrumentation.runOnMainSync(() -> {
+            FlutterInjector.instance().flutterLoader().startInitialization(mContext);
+            FlutterInjector.instance().flutterLoader().ensureInitializationComplete(mContext, null);
+            mEngine = new FlutterEngine(mContext);
+            mModule.onAttachedToEngine(mContext, mEngine.getDartExecutor());
+        });
+        mTaskQueue = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        mTaskQueue.shutdownNow();
+        mInstrumentation.runOnMainSync(() -> {
+            invoke("stop", null);
+            PluginTracer.setEnabled(mContext, false);
+            mModule.onDetachedFromEngine(mEngine.getDartExecutor());
+            mEngine.destroy();
+        });
+    }
+
+    @Test
+    public void startupSequence() throws Exception {
+        PluginTracer.setEnabled(mContext, true);
+        // Untimed first sequence:  class-loading and the native singleton's first-use.
+        mInstrumentation.runOnMainSync(this::startupSequenceCalls);
+
+        long[] platformThread = new long[ROUNDS];
+        long[] taskQueue = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            platformThread[i] = onPlatformThread();
+            taskQueue[i] = onTaskQueue();
+        }
+
+        String json = String.format(Locale.US, "{\"benchmark\":\"methodChannelStartup\",\"unit\":\"us\",\"calls\":%d,\"platformThread\":{\"mainThreadCpuP50\":%d},\"taskQueue\":{\"mainThreadCpuP50\":%d}}",
+                SCHEDULED_TASKS + 1, median(platformThread), median(taskQueue));
+        Log.i(TAG, json);
+        Bundle status = new Bundle();
+        status.putString("benchmark", json);
+        mInstrumentation.sendStatus(0, status);
+    }
+
+    /**
+     * @return main-thread CPU time (us) consumed running the sequence on the main-thread.
+     */
+    private long onPlatformThread() {
+        long[] cpu = new long[1];
+        mInstrumentation.runOnMainSync(() -> {
+            Trace.beginSection("startup.platformThread");
+            long startedAt = Debug.threadCpuTimeNanos();
+            startupSequenceCalls();
+            cpu[0] = Debug.threadCpuTimeNanos() - startedAt;
+            Trace.endSection();
+        });
+        return TimeUnit.NANOSECONDS.toMicros(cpu[0]);
+    }
+
+    /**
+     * @return main-thread CPU time (us) consumed while the sequence runs on a background thread, as the /methods
+     * TaskQueue runs it.  Includes anything the calls post to the main-thread.
+     */
+    private long onTaskQueue() throws Exception {
+        long startedAt = mainThreadCpuTimeNanos();
+        mTaskQueue.submit(() -> {
+            Trace.beginSection("startup.taskQueue");
+            startupSequenceCalls();
+            Trace.endSection();
+        }).get(30, TimeUnit.SECONDS);
+        // Let anything posted to the main-thread run before sampling.
+        mInstrumentation.waitForIdleSync();
+        return TimeUnit.NANOSECONDS.toMicros(mainThreadCpuTimeNanos() - startedAt);
+    }
+
+    private void startupSequenceCalls() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("minimumFetchInterval", 15);
+        config.put("stopOnTerminate", false);
+        config.put("enableHeadless", true);
+        config.put("enableTracing", true);
+        invoke("configure", config);
+        for (int i = 0; i < SCHEDULED_TASKS; i++) {
+            Map<String, Object> task = new HashMap<>();
+            task.put("taskId", "com.transistorsoft.startup." + i);
+            task.put("delay", 60000);
+            task.put("periodic", (i % 2) == 0);
+            invoke("scheduleTask", task);
+        }
+    }
+
+    private void invoke(String method, @Nullable Object arguments) {
+        AtomicReference<String> error = new AtomicReference<>();
+        mModule.onMethodCall(new MethodCall(method, arguments), new MethodChannel.Result() {
+            @Override
+            public void success(@Nullable Object result) {}
+
+            @Override
+            public void error(@NonNull String code, @Nullable String message, @Nullable Object details) {
+                error.set(code + ": " + message);
+            }
+
+            @Override
+            public void notImplemented() {
+                error.set("notImplemented");
+            }
+        });
+        if (error.get() != null) throw new AssertionError(method + " failed: " + error.get());
+    }
+
+    private long mainThreadCpuTimeNanos() {
+        long[] cpu = new long[1];
+        mInstrumentation.runOnMainSync(() -> cpu[0] = Debug.threadCpuTimeNanos());
+        return cpu[0];
+    }
+
+    private static long median(long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
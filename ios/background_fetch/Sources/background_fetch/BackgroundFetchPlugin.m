@@ -18,6 +18,11 @@ static NSString *const ACTION_FINISH    = @"finish";
 static NSString *const ACTION_STATUS    = @"status";
 static NSString *const ACTION_REGISTER_HEADLESS_TASK = @"registerHeadlessTask";
 static NSString *const ACTION_SCHEDULE_TASK = @"scheduleTask";
+static NSString *const ACTION_GET_METRICS = @"getMetrics";
+static NSString *const ACTION_QUERY_JOURNAL = @"queryJournal";
+static NSString *const ACTION_SCHEDULE_TASKS = @"scheduleTasks";
+static NSString *const ACTION_STOP_TASKS = @"stopTasks";
+static NSString *const ACTION_FINISH_TASKS = @"finishTasks";
 
 @interface BackgroundFetchPlugin ()<FlutterStreamHandler>
 @end
@@ -82,6 +87,18 @@ static NSString *const ACTION_SCHEDULE_TASK = @"scheduleTask";
         result(@(YES));
     } else if ([self method:call.method is:ACTION_SCHEDULE_TASK]) {
         [self scheduleTask:call.arguments result:result];
+    } else if ([self method:call.method is:ACTION_SCHEDULE_TASKS]) {
+        [self scheduleTasks:call.arguments result:result];
+    } else if ([self method:call.method is:ACTION_STOP_TASKS]) {
+        [self stopTasks:call.arguments result:result];
+    } else if ([self method:call.method is:ACTION_FINISH_TASKS]) {
+        [self finishTasks:call.arguments result:result];
+    } else if ([self method:call.method is:ACTION_GET_METRICS]) {
+        // Task metrics are currently recorded on Android only.
+        result(@{});
+    } else if ([self method:call.method is:ACTION_QUERY_JOURNAL]) {
+        // The task journal is currently recorded on Android only.
+        result(@[]);
     } else {
         result(FlutterMethodNotImplemented);
     }
@@ -142,13 +159,76 @@ static NSString *const ACTION_SCHEDULE_TASK = @"scheduleTask";
     }];
 }
 
--(void) finish:(NSString*)taskId result:(FlutterResult)flutterResult {
+-(void) finish:(id)args result:(FlutterResult)flutterResult {
+    // Either a bare taskId or {taskId, result}:  the fetch result is only used on Android.
+    NSString *taskId = [args isKindOfClass:[NSDictionary class]] ? [args objectForKey:@"taskId"] : args;
     TSBackgroundFetch *fetchManager = [TSBackgroundFetch sharedInstance];
     [fetchManager finish:taskId];
     flutterResult(@(YES));
 }
 
 - (void) scheduleTask:(NSDictionary*)config result:(FlutterResult)result {
+    NSError *error = [self scheduleTaskWithConfig:config];
+    if (!error) {
+        result(@(YES));
+    } else {
+        NSString *message = error.localizedFailureReason;
+        if (!message) message = error.domain;
+        result([FlutterError errorWithCode: [NSString stringWithFormat:@"%lu", (long) error.code] message:message details:nil]);
+    }
+}
+
+- (void) scheduleTasks:(NSArray*)configs result:(FlutterResult)result {
+    // Validate every config before scheduling any.
+    NSMutableArray *errors = [NSMutableArray new];
+    NSMutableSet *seen = [NSMutableSet new];
+    [configs enumerateObjectsUsingBlock:^(NSDictionary *config, NSUInteger idx, BOOL *stop) {
+        id taskId = [config objectForKey:@"taskId"];
+        if (![taskId isKindOfClass:[NSString class]] || [taskId length] == 0) {
+            [errors addObject:[NSString stringWithFormat:@"[%lu] missing taskId", (unsigned long)idx]];
+        } else if ([seen containsObject:taskId]) {
+            [errors addObject:[NSString stringWithFormat:@"[%lu] duplicate taskId: %@", (unsigned long)idx, taskId]];
+        } else {
+            [seen addObject:taskId];
+        }
+        if (![[config objectForKey:@"delay"] isKindOfClass:[NSNumber class]]) {
+            [errors addObject:[NSString stringWithFormat:@"[%lu] missing delay", (unsigned long)idx]];
+        }
+    }];
+    if ([errors count] > 0) {
+        result([FlutterError errorWithCode:@"INVALID_TASK_CONFIG" message:[NSString stringWithFormat:@"scheduleTasks rejected %lu invalid config(s)", (unsigned long)[errors count]] details:errors]);
+        return;
+    }
+    NSMutableDictionary *results = [NSMutableDictionary new];
+    for (NSDictionary *config in configs) {
+        NSError *error = [self scheduleTaskWithConfig:config];
+        if (error) NSLog(@"- %@ scheduleTasks failed to schedule %@: %@", PLUGIN_ID, [config objectForKey:@"taskId"], error);
+        results[[config objectForKey:@"taskId"]] = @(error == nil);
+    }
+    result(results);
+}
+
+- (void) stopTasks:(NSArray*)taskIds result:(FlutterResult)result {
+    TSBackgroundFetch *fetchManager = [TSBackgroundFetch sharedInstance];
+    NSMutableDictionary *results = [NSMutableDictionary new];
+    for (NSString *taskId in taskIds) {
+        [fetchManager stop:taskId];
+        results[taskId] = @(YES);
+    }
+    result(results);
+}
+
+- (void) finishTasks:(NSArray*)taskIds result:(FlutterResult)result {
+    TSBackgroundFetch *fetchManager = [TSBackgroundFetch sharedInstance];
+    NSMutableDictionary *results = [NSMutableDictionary new];
+    for (NSString *taskId in taskIds) {
+        [fetchManager finish:taskId];
+        results[taskId] = @(YES);
+    }
+    result(results);
+}
+
+- (NSError*) scheduleTaskWithConfig:(NSDictionary*)config {
     NSString *taskId = [config objectForKey:@"taskId"];
     NSInteger taskType = [[config objectForKey:@"type"] intValue];
     
@@ -165,13 +245,7 @@ static NSString *const ACTION_SCHEDULE_TASK = @"scheduleTask";
                                                                         requiresExternalPower: requiresCharging
                                                                     requiresNetworkConnectivity:requiresNetwork
                                                                                      callback:[self createTaskCallback]];
-    if (!error) {
-        result(@(YES));
-    } else {
-        NSString *message = error.localizedFailureReason;
-        if (!message) message = error.domain;
-        result([FlutterError errorWithCode: [NSString stringWithFormat:@"%lu", (long) error.code] message:message details:nil]);
-    }
+    return error;
 }
 
 - (BOOL) method:(NSString*)method is:(NSString*)action {
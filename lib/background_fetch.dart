@@ -40,9 +40,12 @@ class HeadlessEvent {
   /// Signals whether this headless-task has timeout out.
   bool timeout;
 
+  /// __Android only__: The [TaskConfig.extras] provided to [BackgroundFetch.scheduleTask], if any.
+  Object? extras;
+
   /// Create a new HeadlessEvent instance.
   /// Automatically instantitated and provided to your registered headless task.
-  HeadlessEvent(this.taskId, this.timeout);
+  HeadlessEvent(this.taskId, this.timeout, [this.extras]);
 }
 
 /// Base class for both [BackgroundFetchConfig] and [TaskConfig].
@@ -211,9 +214,61 @@ class BackgroundFetchConfig extends _AbstractTaskConfig {
   ///
   int minimumFetchInterval;
 
+  /// __Android only__: Milliseconds to keep the headless `FlutterEngine` warm after the last headless task calls [BackgroundFetch.finish].
+  ///
+  /// Headless tasks firing within this window reuse the running engine rather than paying for a cold boot.  Once the window expires, the engine is destroyed.  Defaults to `-1`:  the engine is kept for the life of the process.
+  ///
+  int? headlessEngineIdleTtl;
+
+  /// __Android only__: Set `true` to spawn the headless `FlutterEngine` from a shared `FlutterEngineGroup`.
+  ///
+  /// Engines spawned from the same group share the Dart VM snapshot and code pages, reducing the memory cost of the headless engine when another engine from the group is alive (eg: an add-to-app host which provides its group via `BackgroundFetchPlugin.setFlutterEngineGroup`).  Defaults to `false`.
+  ///
+  bool? useFlutterEngineGroup;
+
+  /// __Android only__: Maximum number of fetch / timeout events buffered while no Dart listener is attached (eg: during `Activity` re-creation or before [BackgroundFetch.configure] subscribes).
+  ///
+  /// Buffered events are delivered in order once the listener attaches.  When the buffer is full, the oldest event is dropped and automatically finished.  Defaults to `16`.
+  ///
+  int? eventBufferCapacity;
+
+  /// __Android only__: Milliseconds after an event is delivered to Dart before the plugin automatically calls [BackgroundFetch.finish] on your behalf.
+  ///
+  /// Guards against handlers which throw or forget to call `finish`, which would otherwise hold the task's job and wakelock until the OS timeout.  Must be shorter than the OS limit of 10 minutes (`JobScheduler`):  larger values are clamped to 9.5 minutes.  The number of force-finished tasks and how long they ran are reported by [BackgroundFetch.getMetrics].  Defaults to `0` (disabled).
+  ///
+  int? autoFinishTimeout;
+
+  /// __Android only__: Set `true` to adapt [minimumFetchInterval] to the outcomes you report to [BackgroundFetch.finish].
+  ///
+  /// Each [BackgroundFetch.FETCH_RESULT_NO_DATA] or [BackgroundFetch.FETCH_RESULT_FAILED] doubles the interval, up to [maximumFetchInterval];  [BackgroundFetch.FETCH_RESULT_NEW_DATA] returns it to [minimumFetchInterval].  The adapted interval persists across app launches and is reported by [BackgroundFetch.getMetrics].  Defaults to `false`.
+  ///
+  bool? adaptiveFetchInterval;
+
+  /// __Android only__: The upper bound in minutes of the interval when [adaptiveFetchInterval] is enabled.  Defaults to `240`.
+  ///
+  int? maximumFetchInterval;
+
+  /// __Android only__: Maximum number of headless tasks in flight at once in the headless isolate.
+  ///
+  /// Tasks beyond the limit wait in a queue ordered by [TaskConfig.priority] and are dispatched as earlier tasks call [BackgroundFetch.finish].  Queue-wait times are reported by [BackgroundFetch.getMetrics].  Defaults to `0` (unlimited).
+  ///
+  int? headlessMaxConcurrency;
+
+  /// __Android only__: Set `true` to emit `androidx.tracing` sections across the fetch and headless lifecycle (engine creation, Dart entrypoint execution, callback-id loading, dispatch, method-calls), along with an async slice per task from fire to [BackgroundFetch.finish], keyed by `taskId`.  Capture with Perfetto / Systrace.  Costs nothing measurable when disabled.  Defaults to `false`.
+  ///
+  bool? enableTracing;
+
   /// Creates an instance of `BackgroundFetchConfig` to provide to [configure].
   BackgroundFetchConfig(
       {required this.minimumFetchInterval,
+      this.headlessEngineIdleTtl,
+      this.useFlutterEngineGroup,
+      this.eventBufferCapacity,
+      this.autoFinishTimeout,
+      this.adaptiveFetchInterval,
+      this.maximumFetchInterval,
+      this.headlessMaxConcurrency,
+      this.enableTracing,
       bool? stopOnTerminate,
       bool? startOnBoot,
       bool? enableHeadless,
@@ -237,6 +292,30 @@ class BackgroundFetchConfig extends _AbstractTaskConfig {
   Map<String, dynamic> toMap() {
     var config = super.toMap();
     config['minimumFetchInterval'] = minimumFetchInterval;
+    if (headlessEngineIdleTtl != null) {
+      config['headlessEngineIdleTtl'] = headlessEngineIdleTtl;
+    }
+    if (useFlutterEngineGroup != null) {
+      config['useFlutterEngineGroup'] = useFlutterEngineGroup;
+    }
+    if (eventBufferCapacity != null) {
+      config['eventBufferCapacity'] = eventBufferCapacity;
+    }
+    if (autoFinishTimeout != null) {
+      config['autoFinishTimeout'] = autoFinishTimeout;
+    }
+    if (adaptiveFetchInterval != null) {
+      config['adaptiveFetchInterval'] = adaptiveFetchInterval;
+    }
+    if (maximumFetchInterval != null) {
+      config['maximumFetchInterval'] = maximumFetchInterval;
+    }
+    if (headlessMaxConcurrency != null) {
+      config['headlessMaxConcurrency'] = headlessMaxConcurrency;
+    }
+    if (enableTracing != null) {
+      config['enableTracing'] = enableTracing;
+    }
     return config;
   }
 }
@@ -259,6 +338,20 @@ class TaskConfig extends _AbstractTaskConfig {
   ///
   bool requiresNetworkConnectivity = false;
 
+  /// __Android only__: Headless dispatch priority.  When tasks are queued by [BackgroundFetchConfig.headlessMaxConcurrency] or [concurrencyGroup], higher priorities are dispatched first.  Defaults to `0`.
+  ///
+  int? priority;
+
+  /// __Android only__: Headless tasks sharing a `concurrencyGroup` run one at a time:  a task is held until the previous task of its group calls [BackgroundFetch.finish].
+  ///
+  String? concurrencyGroup;
+
+  /// __Android only__: A small opaque payload delivered with this task's events, so your callback knows what the task is for without reloading its own state:  either a `Map` of values supported by `StandardMessageCodec`, or raw bytes as a `Uint8List` (delivered without re-encoding).
+  ///
+  /// Received by a fetch `callback` accepting two arguments `(String taskId, Object? extras)`, and by headless tasks as [HeadlessEvent.extras].  The extras of a one-shot task are discarded once it is finished.  Limited to 4 KB, encoded:  [BackgroundFetch.scheduleTask] fails with a `PlatformException` (`EXTRAS_TOO_LARGE`) for larger extras.
+  ///
+  Object? extras;
+
   /// Create an instance of `TaskConfig` for [scheduleTask].
   TaskConfig(
       {required this.taskId,
@@ -274,7 +367,10 @@ class TaskConfig extends _AbstractTaskConfig {
       bool? requiresStorageNotLow,
       bool? requiresCharging,
       bool? requiresDeviceIdle,
-      this.requiresNetworkConnectivity = false})
+      this.requiresNetworkConnectivity = false,
+      this.priority,
+      this.concurrencyGroup,
+      this.extras})
       : super(
             stopOnTerminate: stopOnTerminate,
             startOnBoot: startOnBoot,
@@ -293,6 +389,15 @@ class TaskConfig extends _AbstractTaskConfig {
     config['periodic'] = periodic;
     config['requiresNetworkConnectivity'] = requiresNetworkConnectivity;
     config['type'] = type.index;
+    if (priority != null) {
+      config['priority'] = priority;
+    }
+    if (concurrencyGroup != null) {
+      config['concurrencyGroup'] = concurrencyGroup;
+    }
+    if (extras != null) {
+      config['extras'] = extras;
+    }
     return config;
   }
 }
@@ -452,6 +557,8 @@ class BackgroundFetch {
         String taskId = event['taskId'];
         if (event['timeout']) {
           onTimeout?.call(taskId);
+        } else if (onFetch is Function(String, Object?)) {
+          onFetch(taskId, event['extras']);
         } else {
           onFetch(taskId);
         }
@@ -526,6 +633,20 @@ class BackgroundFetch {
     return status;
   }
 
+  /// Stop a list of custom-tasks in a single platform-channel call.
+  ///
+  /// Returns a `Map` of `taskId` to whether that task was successfully stopped.
+  ///
+  /// ```dart
+  /// // On logout
+  /// await BackgroundFetch.stopTasks(['com.foo.sync', 'com.foo.upload']);
+  /// ```
+  ///
+  static Future<Map<String, bool>> stopTasks(List<String> taskIds) async {
+    final Map? results = await _methodChannel.invokeMethod('stopTasks', taskIds);
+    return Map<String, bool>.from(results ?? {});
+  }
+
   /// Returns the current authorization status.
   /// - [STATUS_AVAILABLE]
   /// - [STATUS_DENIED]
@@ -536,6 +657,44 @@ class BackgroundFetch {
     return status;
   }
 
+  /// __Android only__: Returns task latency metrics recorded by the plugin.
+  ///
+  /// For recent tasks, the plugin records when each was fired by the OS, when the headless engine started, when the Dart client initialized, when the event was dispatched and when it timed-out / finished.  The returned `Map` contains:
+  /// - `coldStart`, `dispatch`, `duration`:  `{count, p50, p95, max}` latency summaries in milliseconds.
+  /// - `tasks`:  the raw per-task timelines (`SystemClock.elapsedRealtime` timestamps).
+  /// - `headless`, `engine`:  headless dispatch-queue and engine-reuse counters.
+  ///
+  /// On iOS, returns an empty `Map`.
+  ///
+  static Future<Map<String, dynamic>> getMetrics() async {
+    final Map? metrics = await _methodChannel.invokeMethod('getMetrics');
+    return Map<String, dynamic>.from(metrics ?? {});
+  }
+
+  /// __Android only__: Returns the history of task executions recorded in the plugin's on-device journal, oldest first.
+  ///
+  /// The journal is a fixed-size ring of the 512 most recent executions which survives app termination.  Filter by fire-time with [start] / [end] and by [taskId].  Each record is a `Map`:
+  /// - `taskId`
+  /// - `firedAt`:  milliseconds since epoch when the OS fired the task.
+  /// - `duration`:  milliseconds from dispatch to [finish] (`-1` if never dispatched).
+  /// - `headless`:  `true` if delivered to the headless task, `false` if delivered to the [configure] callback.
+  /// - `outcome`:  the [FETCH_RESULT_NEW_DATA] / [FETCH_RESULT_NO_DATA] / [FETCH_RESULT_FAILED] provided to [finish], or `-1`.
+  /// - `timeout`:  whether the task timed-out.
+  ///
+  /// On iOS, returns an empty `List`.
+  ///
+  static Future<List<Map<String, dynamic>>> queryJournal(
+      {DateTime? start, DateTime? end, String? taskId}) async {
+    final List? records = await _methodChannel.invokeMethod('queryJournal', {
+      'start': start?.millisecondsSinceEpoch,
+      'end': end?.millisecondsSinceEpoch,
+      'taskId': taskId
+    });
+    return (records ?? [])
+        .map((record) => Map<String, dynamic>.from(record))
+        .toList();
+  }
+
   /// Schedule a background-task to occur in [TaskConfig.delay] milliseconds.
   ///
   /// These tasks are "one-shot" tasks by default.  To execute a repeating task, set [TaskConfig.periodic] to `true`.
@@ -576,14 +735,44 @@ class BackgroundFetch {
     return await _methodChannel.invokeMethod('scheduleTask', config.toMap());
   }
 
+  /// Schedule a list of custom-tasks in a single platform-channel call.
+  ///
+  /// All configs are validated before any is scheduled:  if any config is invalid (eg: a duplicate `taskId`), the returned `Future` completes with a `PlatformException` and nothing is scheduled.  Otherwise, returns a `Map` of `taskId` to whether that task was successfully scheduled.
+  ///
+  /// ```dart
+  /// await BackgroundFetch.scheduleTasks([
+  ///   TaskConfig(taskId: 'com.foo.sync', delay: 60000, periodic: true),
+  ///   TaskConfig(taskId: 'com.foo.upload', delay: 300000)
+  /// ]);
+  /// ```
+  ///
+  static Future<Map<String, bool>> scheduleTasks(List<TaskConfig> configs) async {
+    final Map? results = await _methodChannel.invokeMethod(
+        'scheduleTasks', configs.map((config) => config.toMap()).toList());
+    return Map<String, bool>.from(results ?? {});
+  }
+
   /// Signal to the OS that your fetch-event for the provided `taskId` is complete.
   ///
   /// You __MUST__ call `finish` in your fetch `callback` provided to [configure] in order to signal to the OS that your fetch action is complete. iOS provides only 30s of background-time for a fetch-event -- if you exceed this 30s, the OS will punish your app for spending too much time in the background.
   ///
+  /// The optional `result` ([FETCH_RESULT_NEW_DATA], [FETCH_RESULT_NO_DATA] or [FETCH_RESULT_FAILED]) reports the outcome of the fetch, used by [BackgroundFetchConfig.adaptiveFetchInterval].
   ///
+  static Future<void> finish(String taskId, [int? result]) async {
+    if (result == null) {
+      return await _methodChannel.invokeMethod('finish', taskId);
+    }
+    return await _methodChannel
+        .invokeMethod('finish', {'taskId': taskId, 'result': result});
+  }
+
+  /// Signal completion of a list of tasks in a single platform-channel call.
   ///
-  static Future<void> finish(String taskId) async {
-    return await _methodChannel.invokeMethod('finish', taskId);
+  /// Returns a `Map` of `taskId` to whether that task was successfully finished.
+  ///
+  static Future<Map<String, bool>> finishTasks(List<String> taskIds) async {
+    final Map? results = await _methodChannel.invokeMethod('finishTasks', taskIds);
+    return Map<String, bool>.from(results ?? {});
   }
 
   /// __Android-only__:  Registers a global function to execute when your app has been terminated.
@@ -626,6 +815,19 @@ class BackgroundFetch {
   /// }
   /// ```
   ///
+  /// Several tasks firing together are delivered to the headless isolate in a single batch.  A callback accepting a `HeadlessEvent` is invoked once per event.  To receive the whole batch in one call, register a callback accepting a `List<HeadlessEvent>` instead:
+  ///
+  /// ```dart
+  /// @pragma('vm:entry-point')
+  /// void backgroundFetchHeadlessTask(List<HeadlessEvent> events) async {
+  ///   for (var event in events) {
+  ///     BackgroundFetch.finish(event.taskId);
+  ///   }
+  /// }
+  /// ```
+  ///
+  /// Each event is acknowledged to the native side as soon as your callback returns.  A callback which throws before returning is re-sent the event (up to 4 attempts) and its task finished if delivery ultimately fails.  An `async` callback has returned at its first `await`:  errors thrown after that are logged but don't cause redelivery.  Set [BackgroundFetchConfig.autoFinishTimeout] to release tasks such a callback never finishes.
+  ///
   static Future<bool> registerHeadlessTask(Function callback) async {
     var completer = Completer<bool>();
 
@@ -661,12 +863,37 @@ class BackgroundFetch {
 @pragma('vm:entry-point')
 void _headlessCallbackDispatcher() {
   WidgetsFlutterBinding.ensureInitialized();
-  const _headlessChannel =
-      MethodChannel("$_PLUGIN_PATH/headless", JSONMethodCodec());
+  // StandardMethodCodec:  events arrive as typed fields rather than JSON text.
+  const _headlessChannel = MethodChannel("$_PLUGIN_PATH/headless");
+
+  // taskId -> deliveryId of the last event delivered to the callback.  The native side re-sends an event until this
+  // handler completes (acknowledging it):  an event already delivered is acknowledged without calling back again.
+  // Acknowledgement doesn't wait for a Future returned by the callback, which may run for as long as the task does:
+  // only synchronous throws are redelivered.  Asynchronous errors are logged;  FinishWatchdog (autoFinishTimeout)
+  // releases a task the callback never finishes.
+  final Map<String, int> delivered = {};
 
   _headlessChannel.setMethodCallHandler((call) async {
     final args = call.arguments;
 
+    HeadlessEvent toEvent(dynamic task) =>
+        HeadlessEvent(task['taskId'], task['timeout'], task['extras']);
+    bool isDuplicate(dynamic task) =>
+        delivered[task['taskId']] == task['deliveryId'];
+    void markDelivered(dynamic task) {
+      delivered[task['taskId']] = task['deliveryId'];
+    }
+
+    void logAsyncError(dynamic returned) {
+      if (returned is Future) {
+        returned.then((_) {}, onError: (e, stacktrace) {
+          print(
+              "[BackgroundFetch _headlessCallbackDispather] ‼️ Async callback error: ${e.toString()}");
+          print(stacktrace);
+        });
+      }
+    }
+
     // Run the headless-task.
     try {
       final callback = PluginUtilities.getCallbackFromHandle(
@@ -674,14 +901,32 @@ void _headlessCallbackDispatcher() {
       if (callback == null) {
         print(
             '[BackgroundFetch _headlessCallbackDispatcher] ERROR: Failed to get callback from handle: $args');
-        return;
+        return false;
+      }
+      final tasks = (call.method == 'batch')
+          ? (args['tasks'] as List).where((task) => !isDuplicate(task)).toList()
+          : [args['task']].where((task) => !isDuplicate(task)).toList();
+      if (tasks.isEmpty) {
+        return true;
+      }
+      if (callback is Function(HeadlessEvent)) {
+        // Mark each event as soon as its callback returns:  if a later one throws, a re-sent batch won't call back
+        // again for those already delivered.
+        for (final task in tasks) {
+          logAsyncError(callback(toEvent(task)));
+          markDelivered(task);
+        }
+      } else {
+        logAsyncError(callback(tasks.map(toEvent).toList()));
+        tasks.forEach(markDelivered);
       }
-      var task = HeadlessEvent(args['task']['taskId'], args['task']['timeout']);
-      callback(task);
+      return true;
     } catch (e, stacktrace) {
       print(
           "[BackgroundFetch _headlessCallbackDispather] ‼️ Callback error: ${e.toString()}");
       print(stacktrace);
+      // Not acknowledged:  the native side retries, then finishes the task(s).
+      rethrow;
     }
   });
   // Signal to native side that the client dispatcher is ready to receive events.